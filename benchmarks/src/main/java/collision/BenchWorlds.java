@@ -0,0 +1,116 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Worlds and ball states the benchmarks run on.
+ *
+ * "level1".."level4" are the levels of the game, "random1k", "random10k" and
+ * "random100k" are that many random short segments, in an area that grows
+ * with the count so the density stays about the same.
+ *
+ */
+
+package collision;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class BenchWorlds {
+
+    static final double RADIUS = 16;
+
+    // number of precomputed ball states, power of two
+    static final int CASES = 1024;
+
+
+    // Worlds -----------------------------------------------------------------
+    static ArrayList<int[]> lines(String name) {
+        ArrayList<int[]> l = new ArrayList<int[]>();
+
+        if (name.startsWith("level")) {
+            int level = Integer.parseInt(name.substring(5));
+            for (int[] i : Levels.all[level-1]) l.add(i);
+            return l;
+        }
+
+        int n;
+        if      (name.equals("random1k"))   n = 1000;
+        else if (name.equals("random10k"))  n = 10000;
+        else if (name.equals("random100k")) n = 100000;
+        else throw new IllegalArgumentException("unknown world: "+name);
+
+        Random rnd = new Random(n);
+        int size = size(n);
+        for (int i = 0; i < n; i++) {
+            int x = rnd.nextInt(size);
+            int y = rnd.nextInt(size);
+            l.add(new int[] {x, y, x+rnd.nextInt(121)-60, y+rnd.nextInt(121)-60});
+        }
+        return l;
+    }
+
+    static SegmentWorld packed(ArrayList<int[]> lines) {
+        SegmentWorld w = new SegmentWorld();
+        for (int[] l : lines) w.add(l);
+        w.prepare(RADIUS);
+        return w;
+    }
+
+    static int size(int segments) {
+        return (int) (Math.sqrt(segments)*80);
+    }
+
+
+    // Ball states ------------------------------------------------------------
+    // {x, y, vx, vy} per case, position already updated by the velocity as
+    // collisionDetection expects.
+    //
+    // "resting": just off a segment, moving slowly into it.
+    // "fast":    anywhere, at 250 pixels per tick, bouncing several times in
+    //            dense worlds.
+    static double[][] cases(String motion, ArrayList<int[]> lines) {
+        Random rnd = new Random(42);
+        double[][] c = new double[CASES][];
+
+        int maxX = 0, maxY = 0;
+        for (int[] l : lines) {
+            maxX = Math.max(maxX, Math.max(l[0], l[2]));
+            maxY = Math.max(maxY, Math.max(l[1], l[3]));
+        }
+
+        for (int i = 0; i < CASES; i++) {
+            if (motion.equals("resting")) {
+                int[] l;
+                do l = lines.get(rnd.nextInt(lines.size()));
+                while (l[0] == l[2] && l[1] == l[3]);
+
+                double dx = l[2]-l[0];
+                double dy = l[3]-l[1];
+                double len = Math.hypot(dx, dy);
+                double nx = -dy/len;
+                double ny =  dx/len;
+                if (rnd.nextBoolean()) { nx = -nx; ny = -ny; }
+
+                double vx = -nx*0.5;
+                double vy = -ny*0.5+0.25;
+                double x = (l[0]+l[2])/2.0+nx*(RADIUS+0.1);
+                double y = (l[1]+l[3])/2.0+ny*(RADIUS+0.1);
+                c[i] = new double[] {x+vx, y+vy, vx, vy};
+            }
+
+            else if (motion.equals("fast")) {
+                double a = rnd.nextDouble()*2*Math.PI;
+                double vx = 250*Math.cos(a);
+                double vy = 250*Math.sin(a);
+                double x = RADIUS+rnd.nextDouble()*(maxX-2*RADIUS);
+                double y = RADIUS+rnd.nextDouble()*(maxY-2*RADIUS);
+                c[i] = new double[] {x+vx, y+vy, vx, vy};
+            }
+
+            else throw new IllegalArgumentException("unknown motion: "+motion);
+        }
+        return c;
+    }
+
+}
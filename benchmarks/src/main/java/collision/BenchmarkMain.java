@@ -0,0 +1,29 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Runs the benchmarks with the gc profiler, so the allocation rate is
+ * reported next to the throughput. Takes the usual JMH arguments, e.g.
+ *
+ *     java -jar benchmarks/target/benchmarks.jar Collision -p world=level1
+ *
+ */
+
+package collision;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+
+}
@@ -0,0 +1,75 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Throughput of collisionDetection, one ball per invocation.
+ *
+ * "packed" is the allocation free path over a SegmentWorld, "list" the
+ * original ArrayList<int[]> path that tests every segment.
+ *
+ */
+
+package collision;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class CollisionBenchmark {
+
+    @Param({"level1", "level2", "level3", "level4",
+            "random1k", "random10k", "random100k"})
+    String world;
+
+    @Param({"resting", "fast"})
+    String motion;
+
+    ArrayList<int[]> lines;
+    SegmentWorld packed;
+    double[][] cases;
+
+    ContactBuffer buffer = new ContactBuffer();
+    double[] result = new double[4];
+    int next = 0;
+
+    @Setup
+    public void setup() {
+        lines  = BenchWorlds.lines(world);
+        packed = BenchWorlds.packed(lines);
+        cases  = BenchWorlds.cases(motion, lines);
+    }
+
+    @Benchmark
+    public double[] packed() {
+        double[] c = cases[next++ & (BenchWorlds.CASES-1)];
+        CollisionDetection.collisionDetection(
+            c[0], c[1], BenchWorlds.RADIUS, c[2], c[3], packed, buffer, result);
+        return result;
+    }
+
+    @Benchmark
+    public double[] list() {
+        double[] c = cases[next++ & (BenchWorlds.CASES-1)];
+        return CollisionDetection.collisionDetection(
+            c[0], c[1], BenchWorlds.RADIUS, c[2], c[3], lines);
+    }
+
+}
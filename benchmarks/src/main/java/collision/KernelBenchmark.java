@@ -0,0 +1,123 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Throughput of the single segment tests: toClose, the two intersection
+ * kernels and the broadphase candidate test (scalar and SIMD), each against
+ * every segment of the world per invocation, with the ball states of the
+ * collision benchmark.
+ *
+ */
+
+package collision;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class KernelBenchmark {
+
+    @Param({"level1", "level2", "level3", "level4",
+            "random1k", "random10k", "random100k"})
+    String world;
+
+    @Param({"resting", "fast"})
+    String motion;
+
+    SegmentWorld packed;
+    SegmentWorld.Offsets offsets;
+    double[][] cases;
+
+    int[] ids;
+
+    ContactBuffer buffer = new ContactBuffer();
+    int next = 0;
+
+    @Setup
+    public void setup() {
+        ArrayList<int[]> lines = BenchWorlds.lines(world);
+        packed = BenchWorlds.packed(lines);
+        offsets = packed.offsets(BenchWorlds.RADIUS);
+        cases  = BenchWorlds.cases(motion, lines);
+        ids = new int[packed.count];
+        for (int i = 0; i < ids.length; i++) ids[i] = i;
+    }
+
+    @Benchmark
+    public int toClose() {
+        double[] c = cases[next++ & (BenchWorlds.CASES-1)];
+        SegmentWorld w = packed;
+        int n = 0;
+        for (int i = 0; i < w.count; i++) {
+            if (CollisionDetection.toClose(c[0], c[1], BenchWorlds.RADIUS,
+                    (int)w.x1[i], (int)w.y1[i], (int)w.x2[i], (int)w.y2[i])) n++;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int clIntersection() {
+        double[] c = cases[next++ & (BenchWorlds.CASES-1)];
+        SegmentWorld w = packed;
+        buffer.contacts = 0;
+        for (int i = 0; i < w.count; i++) {
+            CollisionDetection.clIntersection(w.x1[i], w.y1[i],
+                BenchWorlds.RADIUS, c[0]-c[2], c[1]-c[3], c[0], c[1], buffer, i*4);
+        }
+        return buffer.contacts;
+    }
+
+    @Benchmark
+    public int llIntersection() {
+        double[] c = cases[next++ & (BenchWorlds.CASES-1)];
+        SegmentWorld w = packed;
+        SegmentWorld.Offsets o = offsets;
+        buffer.contacts = 0;
+        for (int i = 0; i < w.count; i++) {
+            CollisionDetection.llIntersection(c[0]-c[2], c[1]-c[3], c[0], c[1],
+                o.ax1[i], o.ay1[i], o.ax2[i], o.ay2[i], buffer,
+                i*4+ContactBuffer.SIDE_A);
+        }
+        return buffer.contacts;
+    }
+
+    @Benchmark
+    public int candidateScalar() {
+        double[] c = cases[next++ & (BenchWorlds.CASES-1)];
+        SegmentWorld w = packed;
+        buffer.candidates = 0;
+        for (int i = 0; i < w.count; i++) {
+            CollisionDetection.candidate(w.x1[i], w.y1[i], w.x2[i], w.y2[i],
+                i, BenchWorlds.RADIUS, c[0]-c[2], c[1]-c[3], c[2], c[3], buffer);
+        }
+        return buffer.candidates;
+    }
+
+    @Benchmark
+    public int candidateVector() {
+        double[] c = cases[next++ & (BenchWorlds.CASES-1)];
+        buffer.candidates = 0;
+        VectorSweep.candidates(packed, ids, ids.length, BenchWorlds.RADIUS,
+            c[0]-c[2], c[1]-c[3], c[2], c[3], buffer);
+        return buffer.candidates;
+    }
+
+}
@@ -0,0 +1,205 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Collision detection between moving balls.
+ *
+ * Balls are given as the same parallel arrays BatchCollision takes. The
+ * broadphase is sort and sweep along x over the bounding box of each ball's
+ * movement during the step. The sorted order is kept between calls, and as
+ * balls move little from one step to the next an insertion sort puts it
+ * back in order in close to linear time. When balls are added the order is
+ * rebuilt with a full sort first.
+ *
+ * Every pair whose boxes overlap is tested with ccTimeOfImpact, and the hits
+ * are resolved in order of time. The relative velocity of a pair is
+ * reflected on the line between the centres at the time of impact (the same
+ * reflection the ball-line collision uses), which is an elastic collision
+ * between equal masses. A ball takes part in at most one collision per call,
+ * later hits involving it are left to the next step.
+ *
+ * An instance is meant for one set of balls, and is not thread safe.
+ *
+ */
+
+package collision;
+
+import java.util.Arrays;
+
+public class BallCollision {
+
+    // ball indices ordered by minX, kept between calls
+    private int[] order = new int[0];
+    private int count = 0;
+    private boolean resort = false;
+
+    // swept bounding boxes, by ball index
+    private double[] minX = new double[0];
+    private double[] maxX = new double[0];
+    private double[] minY = new double[0];
+    private double[] maxY = new double[0];
+
+    // candidate hits: time of impact bits and pair index, packed for sorting
+    private long[]   hits  = new long[64];
+    private double[] times = new double[64];
+    private int[]    pairA = new int[64];
+    private int[]    pairB = new int[64];
+    private long[]   keys  = new long[0];
+
+    private boolean[] done = new boolean[0];
+    private final double[] tmp = new double[2];
+
+
+    // call AFTER velocity and position update, and after the collision
+    // detection with the world. px, py, vx and vy of the first n balls are
+    // overwritten with the result.
+    public void collisionDetection(
+            double[] px, double[] py, double[] r,
+            double[] vx, double[] vy, int n) {
+
+        resize(n);
+
+        // Broadphase ---------------------------------------------------------
+        for (int i = 0; i < n; i++) {
+            double x0 = px[i]-vx[i];
+            double y0 = py[i]-vy[i];
+            minX[i] = Math.min(x0, px[i])-r[i];
+            maxX[i] = Math.max(x0, px[i])+r[i];
+            minY[i] = Math.min(y0, py[i])-r[i];
+            maxY[i] = Math.max(y0, py[i])+r[i];
+        }
+
+        if (resort) {
+            sortByFloatKey(n);
+            resort = false;
+        }
+
+        // insertion sort, near linear for the almost sorted order of the
+        // previous step
+        for (int i = 1; i < n; i++) {
+            int b = order[i];
+            double key = minX[b];
+            int j = i-1;
+            while (j >= 0 && minX[order[j]] > key) {
+                order[j+1] = order[j];
+                j--;
+            }
+            order[j+1] = b;
+        }
+
+        int pairs = 0;
+        for (int i = 0; i < n; i++) {
+            int a = order[i];
+            for (int j = i+1; j < n; j++) {
+                int b = order[j];
+                if (minX[b] > maxX[a]) break;
+                if (minY[b] > maxY[a] || maxY[b] < minY[a]) continue;
+
+                double t = CollisionDetection.ccTimeOfImpact(
+                    px[a]-vx[a], py[a]-vy[a], vx[a], vy[a], r[a],
+                    px[b]-vx[b], py[b]-vy[b], vx[b], vy[b], r[b]);
+                if (t < 0) continue;
+
+                if (pairs == pairA.length) {
+                    hits  = Arrays.copyOf(hits,  pairs*2);
+                    times = Arrays.copyOf(times, pairs*2);
+                    pairA = Arrays.copyOf(pairA, pairs*2);
+                    pairB = Arrays.copyOf(pairB, pairs*2);
+                }
+                // t is in [0,1], so its float bits sort like the value
+                hits[pairs]  = ((long)Float.floatToIntBits((float)t) << 32) | pairs;
+                times[pairs] = t;
+                pairA[pairs] = a;
+                pairB[pairs] = b;
+                pairs++;
+            }
+        }
+
+        // Resolve in order of time of impact ---------------------------------
+        Arrays.sort(hits, 0, pairs);
+        Arrays.fill(done, 0, n, false);
+
+        for (int k = 0; k < pairs; k++) {
+            int h = (int) hits[k];
+            int a = pairA[h];
+            int b = pairB[h];
+            if (done[a] || done[b]) continue;
+            done[a] = done[b] = true;
+
+            resolve(px, py, vx, vy, a, b, times[h]);
+        }
+    }
+
+
+    // Collision response -----------------------------------------------------
+    private void resolve(double[] px, double[] py, double[] vx, double[] vy,
+                         int a, int b, double t) {
+
+        // positions at the time of impact
+        double ax = px[a]-vx[a]*(1-t);
+        double ay = py[a]-vy[a]*(1-t);
+        double bx = px[b]-vx[b]*(1-t);
+        double by = py[b]-vy[b]*(1-t);
+
+        double nx = ax-bx;
+        double ny = ay-by;
+        if (nx == 0 && ny == 0) return;
+
+        double rvx = vx[a]-vx[b];
+        double rvy = vy[a]-vy[b];
+        CollisionDetection.reflectVector(rvx, rvy, nx, ny, tmp);
+
+        // each ball takes half of the change of relative velocity
+        double dvx = (tmp[0]-rvx)/2;
+        double dvy = (tmp[1]-rvy)/2;
+        vx[a] += dvx;
+        vy[a] += dvy;
+        vx[b] -= dvx;
+        vy[b] -= dvy;
+
+        // move the rest of the step with the new velocities
+        px[a] = ax+vx[a]*(1-t);
+        py[a] = ay+vy[a]*(1-t);
+        px[b] = bx+vx[b]*(1-t);
+        py[b] = by+vy[b]*(1-t);
+    }
+
+
+    // keeps the order of the balls that are still there, new ones last
+    private void resize(int n) {
+        if (n == count) return;
+
+        if (n > minX.length) {
+            int c = Math.max(n, minX.length*2);
+            minX = Arrays.copyOf(minX, c);
+            maxX = Arrays.copyOf(maxX, c);
+            minY = Arrays.copyOf(minY, c);
+            maxY = Arrays.copyOf(maxY, c);
+            done = Arrays.copyOf(done, c);
+            order = Arrays.copyOf(order, c);
+        }
+
+        int k = 0;
+        for (int i = 0; i < count; i++) {
+            if (order[i] < n) order[k++] = order[i];
+        }
+        for (int i = count; i < n; i++) order[k++] = i;
+        if (n > count) resort = true;
+        count = n;
+    }
+
+    // sort the order by minX rounded to float, packed with the ball index.
+    // good enough for the insertion sort to finish in linear time.
+    private void sortByFloatKey(int n) {
+        if (keys.length < n) keys = new long[minX.length];
+        for (int i = 0; i < n; i++) {
+            int f = Float.floatToIntBits((float) minX[i]);
+            f ^= (f >> 31) & 0x7fffffff; // negative floats sort backwards
+            keys[i] = ((long)f << 32) | i;
+        }
+        Arrays.sort(keys, 0, n);
+        for (int i = 0; i < n; i++) order[i] = (int) keys[i];
+    }
+
+}
@@ -0,0 +1,216 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Many balls in one level, with the physics of Simulation: gravity,
+ * friction, collision detection against the lines and BallCollision between
+ * the balls.
+ *
+ * Most balls of such a scene end up resting on a line or on each other, so
+ * resting balls are put to sleep: after staying within SETTLE_DISTANCE of
+ * one spot for SETTLE_STEPS steps. A sleeping ball skips gravity and the
+ * collision detection against the lines, but still takes part in the
+ * ball-ball broadphase so moving balls bounce off it. It wakes when a line is
+ * drawn near it or when a hit would move it by SETTLE_DISTANCE or more in one
+ * step; softer hits leave it where it is, like a wall, which lets piles of
+ * balls settle.
+ *
+ * Balls pushing on each other never come to rest by themselves, so unlike
+ * in Simulation the limits are loose on purpose: a pile stops where it is
+ * nearly still, a few pixels from where it would have crept to.
+ *
+ * BallCollision moves the balls it resolves without looking at the lines,
+ * so a ball that would be pushed through a line that way is left where the
+ * collision detection against the lines put it, with its new velocity.
+ *
+ * Not thread safe.
+ *
+ */
+
+package collision;
+
+import static collision.Simulation.FRICTION;
+import static collision.Simulation.GRAVITY;
+import static collision.Simulation.WAKE_DISTANCE;
+
+import java.util.Arrays;
+
+public class BallScene {
+
+    static final double SETTLE_DISTANCE = 4;  // px
+    static final int    SETTLE_STEPS    = 40;
+
+    SegmentWorld world;
+
+    // balls, parallel arrays
+    double[] px = new double[16];
+    double[] py = new double[16];
+    double[] vx = new double[16];
+    double[] vy = new double[16];
+    double[] r  = new double[16];
+    int count = 0;
+
+    // resting contact: steps each ball stayed near its rest point
+    int[] still = new int[16];
+    double[] restX = new double[16];
+    double[] restY = new double[16];
+    boolean[] asleep = new boolean[16];
+    int sleeping = 0;
+
+    // position before the step, and after the collision with the lines
+    private double[] ox = new double[16];
+    private double[] oy = new double[16];
+    private double[] sx = new double[16];
+    private double[] sy = new double[16];
+
+    private final BallCollision balls = new BallCollision();
+    private final ContactBuffer contacts = new ContactBuffer();
+    private final double[] update = new double[4];
+
+
+    // the world is used as it is (not copied), lines drawn in the scene are
+    // added to it.
+    public BallScene(SegmentWorld world) {
+        this.world = world;
+    }
+
+    // returns the index of the new ball
+    public int add(double x, double y, double radius) {
+        if (count == px.length) grow(count*2);
+        px[count] = x;
+        py[count] = y;
+        vx[count] = vy[count] = 0;
+        r[count] = radius;
+        still[count] = 0;
+        restX[count] = x;
+        restY[count] = y;
+        asleep[count] = false;
+        return count++;
+    }
+
+    private void grow(int n) {
+        px = Arrays.copyOf(px, n);
+        py = Arrays.copyOf(py, n);
+        vx = Arrays.copyOf(vx, n);
+        vy = Arrays.copyOf(vy, n);
+        r  = Arrays.copyOf(r,  n);
+        ox = Arrays.copyOf(ox, n);
+        oy = Arrays.copyOf(oy, n);
+        sx = Arrays.copyOf(sx, n);
+        sy = Arrays.copyOf(sy, n);
+        still  = Arrays.copyOf(still,  n);
+        restX  = Arrays.copyOf(restX,  n);
+        restY  = Arrays.copyOf(restY,  n);
+        asleep = Arrays.copyOf(asleep, n);
+    }
+
+
+    // Step -------------------------------------------------------------------
+    public void step() {
+        for (int i = 0; i < count; i++) {
+            ox[i] = sx[i] = px[i];
+            oy[i] = sy[i] = py[i];
+            if (asleep[i]) continue;
+
+            vy[i] += GRAVITY;
+            vx[i] *= FRICTION;
+            vy[i] *= FRICTION;
+            px[i] += vx[i];
+            py[i] += vy[i];
+
+            CollisionDetection.collisionDetection(
+                px[i], py[i], r[i], vx[i], vy[i], world, contacts, update);
+            px[i] = update[0];
+            py[i] = update[1];
+            vx[i] = update[2];
+            vy[i] = update[3];
+            sx[i] = px[i];
+            sy[i] = py[i];
+        }
+
+        balls.collisionDetection(px, py, r, vx, vy, count);
+
+        for (int i = 0; i < count; i++) {
+            double dx = px[i]-sx[i];
+            double dy = py[i]-sy[i];
+            if (dx != 0 || dy != 0) {
+                CollisionDetection.collisionDetection(
+                    px[i], py[i], r[i], dx, dy, world, contacts, update);
+                if (contacts.bounces > 0) {
+                    px[i] = sx[i];
+                    py[i] = sy[i];
+                }
+            }
+
+            if (asleep[i]) {
+                // hit by another ball
+                if (Math.hypot(px[i]-ox[i], py[i]-oy[i]) >= SETTLE_DISTANCE) {
+                    wake(i);
+                } else {
+                    px[i] = ox[i];
+                    py[i] = oy[i];
+                    vx[i] = vy[i] = 0;
+                }
+            }
+            else if (Math.hypot(px[i]-restX[i], py[i]-restY[i]) >= SETTLE_DISTANCE) {
+                restX[i] = px[i];
+                restY[i] = py[i];
+                still[i] = 0;
+            }
+            else if (++still[i] >= SETTLE_STEPS) sleep(i);
+        }
+    }
+
+    public void step(int n) {
+        for (int i = 0; i < n; i++) step();
+    }
+
+
+    // Sleeping ---------------------------------------------------------------
+    void sleep(int i) {
+        asleep[i] = true;
+        vx[i] = vy[i] = 0;
+        sleeping++;
+    }
+
+    public void wake(int i) {
+        if (asleep[i]) sleeping--;
+        asleep[i] = false;
+        still[i] = 0;
+    }
+
+    // wake every ball, e.g. after the world was changed by other means than
+    // addLine
+    public void wakeAll() {
+        for (int i = 0; i < count; i++) wake(i);
+    }
+
+    public boolean asleep(int i) {
+        return asleep[i];
+    }
+
+    public int sleeping() {
+        return sleeping;
+    }
+
+
+    // Lines ------------------------------------------------------------------
+    // adds a line to the world and wakes the balls near it
+    public void addLine(int x1, int y1, int x2, int y2) {
+        world.add(x1, y1, x2, y2);
+        for (int i = 0; i < count; i++) {
+            if (asleep[i] && CollisionDetection.toClose(px[i], py[i],
+                    r[i]+WAKE_DISTANCE, x1, y1, x2, y2)) wake(i);
+        }
+    }
+
+
+    // Accessors --------------------------------------------------------------
+    public int size()       { return count; }
+    public double x(int i)  { return px[i]; }
+    public double y(int i)  { return py[i]; }
+    public double vx(int i) { return vx[i]; }
+    public double vy(int i) { return vy[i]; }
+
+}
@@ -0,0 +1,92 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Collision detection for many balls against the same static world.
+ *
+ * Balls are given as parallel arrays of position, velocity and radius, and
+ * resolved in place. Large batches are split over the common fork/join pool;
+ * every worker thread reuses its own contact buffer, so nothing is allocated
+ * per ball. The world is only read, and must not be changed during a call.
+ *
+ */
+
+package collision;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class BatchCollision {
+
+    // balls per fork/join leaf
+    static final int THRESHOLD = 256;
+
+    private static final ThreadLocal<ContactBuffer> BUFFER =
+        ThreadLocal.withInitial(ContactBuffer::new);
+    private static final ThreadLocal<double[]> RESULT =
+        ThreadLocal.withInitial(() -> new double[4]);
+
+
+    // call AFTER velocity and position update, same as collisionDetection.
+    // px, py, vx and vy of the first n balls are overwritten with the result.
+    public static void collisionDetection(
+            double[] px, double[] py, double[] r,
+            double[] vx, double[] vy, int n,
+            SegmentWorld world) {
+
+        if (n <= THRESHOLD) resolve(px, py, r, vx, vy, 0, n, world);
+        else ForkJoinPool.commonPool().invoke(
+            new Batch(px, py, r, vx, vy, 0, n, world));
+    }
+
+
+    // Sequential part --------------------------------------------------------
+    private static void resolve(
+            double[] px, double[] py, double[] r,
+            double[] vx, double[] vy, int from, int to,
+            SegmentWorld world) {
+
+        ContactBuffer buffer = BUFFER.get();
+        double[] result = RESULT.get();
+
+        for (int i = from; i < to; i++) {
+            CollisionDetection.collisionDetection(
+                px[i], py[i], r[i], vx[i], vy[i], world, buffer, result);
+            px[i] = result[0];
+            py[i] = result[1];
+            vx[i] = result[2];
+            vy[i] = result[3];
+        }
+    }
+
+
+    // Fork/join split --------------------------------------------------------
+    private static class Batch extends RecursiveAction {
+
+        final double[] px, py, r, vx, vy;
+        final int from, to;
+        final SegmentWorld world;
+
+        Batch(double[] px, double[] py, double[] r,
+              double[] vx, double[] vy, int from, int to,
+              SegmentWorld world) {
+            this.px = px;  this.py = py;  this.r = r;
+            this.vx = vx;  this.vy = vy;
+            this.from = from;
+            this.to = to;
+            this.world = world;
+        }
+
+        protected void compute() {
+            if (to-from <= THRESHOLD) {
+                resolve(px, py, r, vx, vy, from, to, world);
+                return;
+            }
+            int mid = (from+to) >>> 1;
+            invokeAll(new Batch(px, py, r, vx, vy, from, mid, world),
+                      new Batch(px, py, r, vx, vy, mid, to, world));
+        }
+    }
+
+}
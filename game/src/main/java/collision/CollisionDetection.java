@@ -0,0 +1,579 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ * 
+ * A simple 2D Collision Detection algorithm for a ball/circle and a list of
+ * lines.
+ * 
+ */
+
+package collision;
+
+import static java.lang.Math.sqrt;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.PI;
+import static java.lang.Math.atan;
+import static java.lang.Math.sin;
+import static java.lang.Math.cos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class CollisionDetection {
+
+
+
+    /* Intersect functions returns point of intersection and a normal vector.
+     * for line-line-intersection the normal is the normal of line2.
+     * for circle-line-intersection the normal is just the line from centre
+     * to the intersection point.
+     * Non of the normals are normalized.
+     * Results are appended to the contacts of the given buffer together with
+     * the feature id passed in, nothing is allocated.
+     *
+     * The bounds are tested with a tolerance of EPS, to counteract floating
+     * point errors.
+     */
+
+    static final double EPS = 1e-8;
+
+    // contacts this close to a bounce point are the same contact
+    static final double SAME = 1e-5;
+
+    // the broadphase candidates of a SegmentWorld are tested with the SIMD
+    // kernel of VectorSweep if the jvm has the incubating Vector API, that
+    // is if it runs with --add-modules jdk.incubator.vector, and there are
+    // at least VECTOR_MIN of them.
+    static final boolean VECTOR =
+        ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    static final int VECTOR_MIN = 16;
+
+    // the clock is only read from this many bounces on, a call that ends
+    // before that is cheap anyway
+    static final int TIME_CHECK = 4;
+
+
+
+    // Line-Line-Intersection -------------------------------------------------
+    static void llIntersection(
+            double x1, double y1, double x2, double y2,
+            double x3, double y3, double x4, double y4,
+            ContactBuffer out, int feature) {
+
+        double d = (y3-y4)*(x2-x1)-(y1-y2)*(x4-x3);
+
+        if (d == 0) return;
+
+        double x = ((x4-x3)*(x1*y2-y1*x2)-(x2-x1)*(x3*y4-y3*x4))/d;
+        double y = ((y1-y2)*(x3*y4-y3*x4)-(y3-y4)*(x1*y2-y1*x2))/d;
+
+        if (x > min(max(x1,x2),max(x3,x4))+EPS) return;
+        if (x < max(min(x1,x2),min(x3,x4))-EPS) return;
+        if (y > min(max(y1,y2),max(y3,y4))+EPS) return;
+        if (y < max(min(y1,y2),min(y3,y4))-EPS) return;
+
+        out.addContact(x, y, y4-y3, x3-x4, feature);
+    }
+
+
+    // Circle-Line-Intersection -----------------------------------------------
+    static void clIntersection(
+            double cx, double cy, double r,
+            double x1, double y1, double x2, double y2,
+            ContactBuffer out, int feature) {
+
+        double dx  = x2-x1;
+        double dy  = y2-y1;
+        double dl2 = dx*dx+dy*dy;
+        double det = (x1-cx)*(y2-cy)-(y1-cy)*(x2-cx);
+        double dis = r*r*dl2-det*det;
+
+        if (dis <  0) return;
+
+        else if (dis == 0) {
+            double x = (det*dy)/dl2;
+            double y = (-det*dx)/dl2;
+            addInBounds(x+cx, y+cy, x, y, x1, y1, x2, y2, out, feature);
+        }
+
+        else if (dis >  0) {
+            double rootdis = sqrt(dis);
+            double x_1 = (det*dy+signum(dy)*dx*rootdis)/dl2;
+            double y_1 = (-det*dx+abs(dy)*rootdis)/dl2;
+            double x_2 = (det*dy-signum(dy)*dx*rootdis)/dl2;
+            double y_2 = (-det*dx-abs(dy)*rootdis)/dl2;
+            addInBounds(x_1+cx, y_1+cy, x_1, y_1, x1, y1, x2, y2, out, feature);
+            addInBounds(x_2+cx, y_2+cy, x_2, y_2, x1, y1, x2, y2, out, feature);
+        }
+    }
+
+    // only keeps intersections inside the bounds of the line segment
+    private static void addInBounds(double x, double y, double nx, double ny,
+            double x1, double y1, double x2, double y2,
+            ContactBuffer out, int feature) {
+        if (x < min(x1,x2)-EPS || x > max(x1,x2)+EPS ||
+            y < min(y1,y2)-EPS || y > max(y1,y2)+EPS ) return;
+        out.addContact(x, y, nx, ny, feature);
+    }
+
+
+    // Custom signum function -------------------------------------------------
+    private static int signum(double n) {
+        if (n < 0) return -1;
+        else       return  1;
+    }
+
+
+    /* Collision Detection ----------------------------------------------------
+     *
+     * Collision Detection for a circle and a list of lines.
+     * Don't actually check for collisions of the circle with any lines, but
+     * draws a circle at each endpoint of each line, and two lines tangent to 
+     * both circles of the line and parallel to the original line (and with the
+     * same length), for each line. And checks if the movement vector of the 
+     * circle centre has crossed any of these lines or circles.
+     *
+     */
+
+    // call AFTER velocity and position update
+    public static double[] collisionDetection(
+            double cx, double cy, double r,
+            double vx, double vy,
+            ArrayList<int[]> world) {
+        return collisionDetection(cx, cy, r, vx, vy, world, null);
+    }
+
+    // same as above, but only tests the segments the index returns for the
+    // swept bounding box of each movement vector. The ids in the index must
+    // be positions in the world list.
+    public static double[] collisionDetection(
+            double cx, double cy, double r,
+            double vx, double vy,
+            ArrayList<int[]> world, SpatialHash index) {
+        double[] result = new double[4];
+        collisionDetection(cx, cy, r, vx, vy, world, index,
+                           new ContactBuffer(), result);
+        return result;
+    }
+
+    // Allocation free version, index may be null.
+    // writes {x, y, vx, vy} to result, the bounce points are left in buffer,
+    // and buffer.fallback tells if a budget of the buffer ran out.
+    public static void collisionDetection(
+            double cx, double cy, double r,
+            double vx, double vy,
+            ArrayList<int[]> world, SpatialHash index,
+            ContactBuffer buffer, double[] result) {
+        resolve(cx, cy, r, vx, vy, world, index, null, buffer, result);
+    }
+
+    // Allocation free version for a packed segment world, uses its index and
+    // its tangent lines for r, computed on the first call with r (see
+    // SegmentWorld.Offsets).
+    public static void collisionDetection(
+            double cx, double cy, double r,
+            double vx, double vy,
+            SegmentWorld world,
+            ContactBuffer buffer, double[] result) {
+        resolve(cx, cy, r, vx, vy, null, null, world, buffer, result);
+    }
+
+    private static void resolve(
+            double cx, double cy, double r,
+            double vx, double vy,
+            ArrayList<int[]> world, SpatialHash index, SegmentWorld segments,
+            ContactBuffer buffer, double[] result) {
+
+        buffer.clear();
+
+        // start position of ball centre or vv start
+        double cx0 = cx-vx;
+        double cy0 = cy-vy;
+
+        // end position of ball centre or vv end
+        double cx1 = cx;
+        double cy1 = cy;
+
+        // current velocity
+        double nvx = vx;
+        double nvy = vy;
+
+        SegmentWorld.Offsets offsets = segments == null ? null : segments.offsets(r);
+
+        long start = 0;
+
+        while (true) {
+
+            buffer.contacts = 0;
+            buffer.candidates = 0;
+            if (EngineStats.ENABLED) buffer.iterations++;
+
+            double dx = cx1-cx0;
+            double dy = cy1-cy0;
+
+            // Collect the segments the movement vector may hit, with the
+            // point it enters their bounding box as a lower bound of the
+            // distance to any of their intersections
+            if (segments != null) {
+                int n = segments.index.query(
+                    min(cx0,cx1)-r, min(cy0,cy1)-r,
+                    max(cx0,cx1)+r, max(cy0,cy1)+r, buffer.query);
+                candidates(segments, buffer.query.hits(), n, r,
+                           cx0, cy0, dx, dy, buffer);
+            } else if (index == null) {
+                for (int i = 0; i < world.size(); i++) {
+                    int[] w = world.get(i);
+                    candidate(w[0], w[1], w[2], w[3], i, r,
+                              cx0, cy0, dx, dy, buffer);
+                }
+            } else {
+                int n = index.query(min(cx0,cx1)-r, min(cy0,cy1)-r,
+                                    max(cx0,cx1)+r, max(cy0,cy1)+r,
+                                    buffer.query);
+                int[] hits = buffer.query.hits();
+                for (int i = 0; i < n; i++) {
+                    int[] w = world.get(hits[i]);
+                    candidate(w[0], w[1], w[2], w[3], hits[i], r,
+                              cx0, cy0, dx, dy, buffer);
+                }
+            }
+
+            long[] order = buffer.order;
+            Arrays.sort(order, 0, buffer.candidates);
+            if (EngineStats.ENABLED) buffer.found += buffer.candidates;
+
+            double move = dx*dx+dy*dy;
+            double vmag = move;
+            double same = sameDistance(vmag);
+            int collision = -1;
+
+            // Test the candidates nearest first, until the next one can only
+            // be hit after the first intersection found so far
+            for (int k = 0; k < buffer.candidates; k++) {
+                // the float key may be rounded up, step back one ulp
+                double t = Math.nextDown(Float.intBitsToFloat((int) (order[k] >>> 32)));
+                if (t > 0 && t*t*move > vmag+same) break;
+
+                int s = (int) order[k];
+                int first = buffer.contacts;
+                if (segments != null) {
+                    segmentIntersections(segments, offsets, s, r,
+                                         cx0, cy0, cx1, cy1, buffer);
+                } else {
+                    segmentIntersections(world.get(s), s, r,
+                                         cx0, cy0, cx1, cy1, buffer);
+                }
+                if (EngineStats.ENABLED) {
+                    buffer.tested++;
+                    buffer.produced += buffer.contacts-first;
+                }
+
+                double[] x  = buffer.x;
+                double[] y  = buffer.y;
+                double[] nx = buffer.nx;
+                double[] ny = buffer.ny;
+
+                // find the first intersect and save it two the "collision"
+                for (int i = first; i < buffer.contacts; i++) {
+                    double mag = (x[i]-cx0)*(x[i]-cx0)+(y[i]-cy0)*(y[i]-cy0);
+
+                    if (abs(mag-vmag) <= same && collision != -1) {
+                        // if two intersections happen simultaneously
+                        // normalize and merge normal vectors
+                        double l1 = sqrt(nx[collision]*nx[collision]+ny[collision]*ny[collision]);
+                        double l2 = sqrt(nx[i]*nx[i]+ny[i]*ny[i]);
+                        nx[collision] = (nx[collision]/l1+nx[i]/l2);
+                        ny[collision] = (ny[collision]/l1+ny[i]/l2);
+                    }
+
+                    else if (mag < vmag && !resolved(buffer, i)) {
+                        vmag = mag;
+                        same = sameDistance(vmag);
+                        collision = i;
+                    }
+                }
+            }
+
+            double[] x  = buffer.x;
+            double[] y  = buffer.y;
+            double[] nx = buffer.nx;
+            double[] ny = buffer.ny;
+
+            // if a collision is found; add it to the bounces of the buffer.
+            // if so run while loop again with new velocity vector to find any
+            // collisions for the new trajectory
+            if (collision != -1) {
+                double px = x[collision];
+                double py = y[collision];
+                buffer.addBounce(px, py, buffer.feature[collision]);
+                double[] ref = buffer.tmp;
+                reflectVector(
+                    (cx1-cx0)-(px-cx0),
+                    (cy1-cy0)-(py-cy0),
+                    nx[collision], ny[collision], ref);
+                cx0 = px;
+                cy0 = py;
+                cx1 = cx0+ref[0];
+                cy1 = cy0+ref[1];
+                reflectVector(nvx, nvy, nx[collision], ny[collision], ref);
+                nvx = ref[0];
+                nvy = ref[1];
+
+                // out of budget, stay at the bounce point
+                int n = buffer.bounces;
+                if (n >= buffer.maxBounces) {
+                    buffer.fallback = ContactBuffer.BOUNCE_BUDGET;
+                } else if (n >= TIME_CHECK && buffer.maxNanos > 0) {
+                    if (n == TIME_CHECK) start = System.nanoTime();
+                    else if (System.nanoTime()-start > buffer.maxNanos) {
+                        buffer.fallback = ContactBuffer.TIME_BUDGET;
+                    }
+                }
+                if (buffer.fallback != ContactBuffer.NONE) {
+                    cx1 = cx0;
+                    cy1 = cy0;
+                    break;
+                }
+            }
+
+            else break;
+        }
+
+        result[0] = cx1;
+        result[1] = cy1;
+        result[2] = nvx;
+        result[3] = nvy;
+    }
+
+
+    // Broadphase candidates --------------------------------------------------
+    // the segments ids[0..n) of w the movement vector may hit
+    static void candidates(SegmentWorld w, int[] ids, int n, double r,
+            double cx0, double cy0, double dx, double dy,
+            ContactBuffer out) {
+        if (VECTOR && n >= VECTOR_MIN) {
+            VectorSweep.candidates(w, ids, n, r, cx0, cy0, dx, dy, out);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            int s = ids[i];
+            candidate(w.x1[s], w.y1[s], w.x2[s], w.y2[s], s, r,
+                      cx0, cy0, dx, dy, out);
+        }
+    }
+
+    // slab test of the movement vector against the bounding box of the
+    // segment grown by r (and a little, as the intersections are accepted
+    // within EPS), adds the segment with the fraction of the movement where
+    // it enters the box, unless it misses the box.
+    static void candidate(
+            double x1, double y1, double x2, double y2, int id, double r,
+            double cx0, double cy0, double dx, double dy,
+            ContactBuffer out) {
+
+        double g  = r+SAME;
+        double t0 = 0;
+        double t1 = 1;
+
+        if (dx == 0) {
+            if (cx0 < min(x1,x2)-g || cx0 > max(x1,x2)+g) return;
+        } else {
+            double ta = (min(x1,x2)-g-cx0)/dx;
+            double tb = (max(x1,x2)+g-cx0)/dx;
+            t0 = max(t0, min(ta,tb));
+            t1 = min(t1, max(ta,tb));
+        }
+
+        if (dy == 0) {
+            if (cy0 < min(y1,y2)-g || cy0 > max(y1,y2)+g) return;
+        } else {
+            double ta = (min(y1,y2)-g-cy0)/dy;
+            double tb = (max(y1,y2)+g-cy0)/dy;
+            t0 = max(t0, min(ta,tb));
+            t1 = min(t1, max(ta,tb));
+        }
+
+        if (t0 <= t1) out.addCandidate(id, t0);
+    }
+
+
+    // All intersections of the movement vector with one segment --------------
+    // (both endpoint circles and both tangent lines)
+    private static void segmentIntersections(int[] w, int id, double r,
+            double cx0, double cy0, double cx1, double cy1,
+            ContactBuffer out) {
+
+        int f = id*4;
+        clIntersection(w[0], w[1], r, cx0, cy0, cx1, cy1, out, f+ContactBuffer.CAP1);
+
+        if (w[0] != w[2] || w[1] != w[3]) {
+            clIntersection(w[2], w[3], r, cx0, cy0, cx1, cy1, out, f+ContactBuffer.CAP2);
+
+            double theta = (w[2]-w[0] == 0) ? PI/2 : atan(((double)w[3]-w[1])/(w[2]-w[0]));
+            double rsin  = r*sin(theta);
+            double rcos  = r*cos(theta);
+            llIntersection(cx0, cy0, cx1, cy1,
+                w[0]-rsin, w[1]+rcos, w[2]-rsin, w[3]+rcos, out, f+ContactBuffer.SIDE_A);
+            llIntersection(cx0, cy0, cx1, cy1,
+                w[0]+rsin, w[1]-rcos, w[2]+rsin, w[3]-rcos, out, f+ContactBuffer.SIDE_B);
+        }
+    }
+
+
+    // same for a segment of a packed world, without trigonometry
+    private static void segmentIntersections(SegmentWorld w,
+            SegmentWorld.Offsets o, int i, double r,
+            double cx0, double cy0, double cx1, double cy1,
+            ContactBuffer out) {
+
+        double x1 = w.x1[i], y1 = w.y1[i];
+        double x2 = w.x2[i], y2 = w.y2[i];
+        int shared = w.shared[i];
+        int f = i*4;
+
+        if ((shared & SegmentWorld.SHARED1) == 0) {
+            clIntersection(x1, y1, r, cx0, cy0, cx1, cy1, out, f+ContactBuffer.CAP1);
+        }
+
+        if (x1 != x2 || y1 != y2) {
+            if ((shared & SegmentWorld.SHARED2) == 0) {
+                clIntersection(x2, y2, r, cx0, cy0, cx1, cy1, out, f+ContactBuffer.CAP2);
+            }
+
+            if (o != null) {
+                llIntersection(cx0, cy0, cx1, cy1,
+                    o.ax1[i], o.ay1[i], o.ax2[i], o.ay2[i], out, f+ContactBuffer.SIDE_A);
+                llIntersection(cx0, cy0, cx1, cy1,
+                    o.bx1[i], o.by1[i], o.bx2[i], o.by2[i], out, f+ContactBuffer.SIDE_B);
+            } else {
+                double ox = -w.uy[i]*r;
+                double oy =  w.ux[i]*r;
+                llIntersection(cx0, cy0, cx1, cy1,
+                    x1+ox, y1+oy, x2+ox, y2+oy, out, f+ContactBuffer.SIDE_A);
+                llIntersection(cx0, cy0, cx1, cy1,
+                    x1-ox, y1-oy, x2-ox, y2-oy, out, f+ContactBuffer.SIDE_B);
+            }
+        }
+    }
+
+
+    // Circle-Circle time of impact ------------------------------------------
+    // for two circles moving from (ax,ay) and (bx,by) by (avx,avy) and
+    // (bvx,bvy) during the step. Returns the fraction of the step at which
+    // they first touch, or -1 if they don't. Circles that already overlap
+    // collide at 0 if they are moving towards each other.
+    public static double ccTimeOfImpact(
+            double ax, double ay, double avx, double avy, double ar,
+            double bx, double by, double bvx, double bvy, double br) {
+
+        double dx  = ax-bx;
+        double dy  = ay-by;
+        double dvx = avx-bvx;
+        double dvy = avy-bvy;
+        double rr  = ar+br;
+
+        double a = dvx*dvx+dvy*dvy;
+        double b = 2*(dx*dvx+dy*dvy);
+        double c = dx*dx+dy*dy-rr*rr;
+
+        if (c <= 0) return (b < 0) ? 0 : -1;
+        if (a == 0) return -1;
+
+        double dis = b*b-4*a*c;
+        if (dis < 0) return -1;
+
+        double t = (-b-sqrt(dis))/(2*a);
+        return (t >= 0 && t <= 1) ? t : -1;
+    }
+
+
+    // Vector reflection function ---------------------------------------------
+    // writes the reflected vector to out
+    static void reflectVector(double vx, double vy,
+                              double nx, double ny, double[] out) {
+        double nmag = nx*nx+ny*ny;
+        out[0] = vx-((2*nx*nx*vx)/nmag+(2*nx*ny*vy)/nmag);
+        out[1] = vy-((2*ny*nx*vx)/nmag+(2*ny*ny*vy)/nmag);
+    }
+
+
+    // Already resolved contacts ----------------------------------------------
+    // a contact is the one already bounced off if it is at the point of the
+    // last bounce (the start of the current movement vector, whatever
+    // feature found it), or at the point its feature was last bounced at.
+    private static boolean resolved(ContactBuffer b, int i) {
+        double x = b.x[i];
+        double y = b.y[i];
+        int n = b.bounces-1;
+        if (n >= 0 && near(b.bx[n], b.by[n], x, y)) return true;
+
+        int k = b.lastBounce(b.feature[i]);
+        return k >= 0 && near(b.bx[k], b.by[k], x, y);
+    }
+
+    private static boolean near(double x1, double y1, double x2, double y2) {
+        return abs(x1-x2) <= SAME && abs(y1-y2) <= SAME;
+    }
+
+    // tolerance on squared distances d2 that differ by at most EPS in length
+    private static double sameDistance(double d2) {
+        return EPS*(EPS+2*sqrt(d2));
+    }
+
+
+    // toClose ----------------------------------------------------------------
+    // parts of old Circle-Line-Intersection function 
+    public static boolean toClose(
+            double c1, double c2, double r,
+            int x1, int y1, int x2, int y2) {
+
+        if (x1 == x2 && y1 == y2) {
+            if ((x1-c1)*(x1-c1)+(y1-c2)*(y1-c2) > r*r) return false;
+            else return true;
+        }
+
+        double dx  = x2-x1;
+        double dy  = y2-y1;
+        double dr2 = dx*dx+dy*dy;
+
+        // find intersection between the line and its normal through the 
+        // circle centre, this point will also be the closest point on the line
+        // to the circle centre.
+        double tn  = ((c1-x1)*dx+(c2-y1)*dy)/dr2;
+        double xn  = x1+tn*dx;
+        double yn  = y1+tn*dy;
+
+        // find the length of the line from (xn,yn) to (c1, c2)
+        double dn2 = (xn-c1)*(xn-c1)+(yn-c2)*(yn-c2);
+
+        // if length of the normal intersect to the circle centre is grater 
+        // than the radius -> then there is no intersection between the circle
+        // and the line.
+        if (dn2 > r*r) return false;
+ 
+        // test if the intersection point with the infinite line is out side 
+        // the bounds of the line segment
+        if ( (xn > Math.max(x1, x2)+r) || 
+             (xn < Math.min(x1, x2)-r) ||
+             (yn > Math.max(y1, y2)+r) ||
+             (yn < Math.min(y1, y2)-r) ) return false;
+
+        // edge cases
+        if ( (xn > Math.max(x1, x2)) ||
+             (xn < Math.min(x1, x2)) ||
+             (yn > Math.max(y1, y2)) ||
+             (yn < Math.min(y1, y2)) ) {
+            double db1 = (x1-c1)*(x1-c1)+(y1-c2)*(y1-c2);
+            double db2 = (x2-c1)*(x2-c1)+(y2-c2)*(y2-c2);
+
+            // last non-collision scenario
+            if (db1 > r*r && db2 > r*r) return false;
+        }
+
+        return true;
+    }
+
+}
@@ -0,0 +1,182 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Reusable storage for the collision detection, so a call does not need to
+ * allocate anything once the arrays have grown to fit the scene.
+ *
+ * Contacts are the intersections found for the current movement vector, as
+ * point of intersection, (not normalized) normal vector and the feature that
+ * was hit. Bounces are the points the ball was reflected at during the last
+ * call, in order, with their features.
+ *
+ * A feature is one part of the expanded shape of a segment:
+ * segment id * 4 + one of CAP1, CAP2 (the endpoint circles), SIDE_A, SIDE_B
+ * (the two tangent lines). The features bounced off during a call are kept
+ * in a small hash set, so finding out whether a contact was already
+ * resolved costs the same however many bounces there were.
+ *
+ * Candidates are the segments the current movement vector may hit, as sort
+ * keys: the float bits of the fraction of the movement at which it enters
+ * their bounding box in the high half (non-negative floats sort like their
+ * bits) and the segment id in the low half.
+ *
+ * The budgets bound the work of one call: after maxBounces bounces, or once
+ * the call ran longer than maxNanos, the ball is left at the last bounce
+ * point (where it touches a segment without overlapping it) with the
+ * velocity of that bounce, and fallback says which budget ran out. Only the
+ * bounce budget is on by default: the time budget depends on the speed of
+ * the machine, the JIT and GC pauses, so with it the same input may give
+ * another result, and replays and ScoreVerifier could not re-run a game.
+ * Set maxNanos only where a frame must not be missed and exact results do
+ * not matter.
+ *
+ * A buffer must not be shared between threads.
+ *
+ */
+
+package collision;
+
+import java.util.Arrays;
+
+public class ContactBuffer {
+
+    static final int CAP1   = 0;
+    static final int CAP2   = 1;
+    static final int SIDE_A = 2;
+    static final int SIDE_B = 3;
+
+    // values of fallback
+    public static final int NONE          = 0;
+    public static final int BOUNCE_BUDGET = 1;
+    public static final int TIME_BUDGET   = 2;
+
+    // budgets of a call, maxNanos 0 for no time limit
+    public int  maxBounces = 64;
+    public long maxNanos   = 0;
+
+    // why the last call stopped early, NONE if it did not
+    public int fallback = NONE;
+
+    // contacts for the current movement vector
+    public double[] x  = new double[16];
+    public double[] y  = new double[16];
+    public double[] nx = new double[16];
+    public double[] ny = new double[16];
+    public int[] feature = new int[16];
+    public int contacts = 0;
+
+    // bounce points of the last collisionDetection call
+    public double[] bx = new double[8];
+    public double[] by = new double[8];
+    public int[] bfeature = new int[8];
+    public int bounces = 0;
+
+    // candidate segments for the current movement vector
+    long[] order = new long[64];
+    int candidates = 0;
+
+    // counters of the last call, only kept if EngineStats.ENABLED
+    int iterations, found, tested, produced;
+
+    // set of bounced features: open addressing on the feature id, the value
+    // is the index of the last bounce off it. Slots of older calls are told
+    // apart by their generation, so clearing is free.
+    private int[] setKey = new int[32];
+    private int[] setVal = new int[32];
+    private int[] setGen = new int[32];
+    private int generation = 1;
+
+    // scratch for vector results, SIMD lanes and broadphase queries
+    final double[] tmp = new double[2];
+    double[] lanes = new double[8];
+    final HashQuery query = new HashQuery();
+
+
+    public void clear() {
+        contacts = 0;
+        bounces  = 0;
+        fallback = NONE;
+        iterations = found = tested = produced = 0;
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(setGen, 0);
+            generation = 1;
+        }
+    }
+
+    public void addContact(double px, double py, double pnx, double pny,
+                           int f) {
+        if (contacts == x.length) {
+            int n = contacts*2;
+            x  = Arrays.copyOf(x,  n);
+            y  = Arrays.copyOf(y,  n);
+            nx = Arrays.copyOf(nx, n);
+            ny = Arrays.copyOf(ny, n);
+            feature = Arrays.copyOf(feature, n);
+        }
+        x[contacts]  = px;
+        y[contacts]  = py;
+        nx[contacts] = pnx;
+        ny[contacts] = pny;
+        feature[contacts] = f;
+        contacts++;
+    }
+
+    public void addBounce(double px, double py, int f) {
+        if (bounces == bx.length) {
+            bx = Arrays.copyOf(bx, bounces*2);
+            by = Arrays.copyOf(by, bounces*2);
+            bfeature = Arrays.copyOf(bfeature, bounces*2);
+        }
+        bx[bounces] = px;
+        by[bounces] = py;
+        bfeature[bounces] = f;
+
+        if (2*(bounces+1) > setKey.length) rehash(setKey.length*2);
+        int s = slot(f);
+        setKey[s] = f;
+        setVal[s] = bounces;
+        setGen[s] = generation;
+        bounces++;
+    }
+
+    void addCandidate(int id, double t) {
+        if (candidates == order.length) {
+            order = Arrays.copyOf(order, candidates*2);
+        }
+        order[candidates++] =
+            (long) Float.floatToRawIntBits((float) t) << 32 | id;
+    }
+
+    // index of the last bounce off feature f during this call, or -1
+    public int lastBounce(int f) {
+        int s = slot(f);
+        return (setGen[s] == generation) ? setVal[s] : -1;
+    }
+
+
+    // Feature set ------------------------------------------------------------
+    // slot of f, or the empty slot where it would go
+    private int slot(int f) {
+        int mask = setKey.length-1;
+        int s = (f*0x9E3779B9 >>> 16) & mask;
+        while (setGen[s] == generation && setKey[s] != f) s = (s+1) & mask;
+        return s;
+    }
+
+    // the new arrays only hold the current call, so the generation restarts
+    private void rehash(int n) {
+        setKey = new int[n];
+        setVal = new int[n];
+        setGen = new int[n];
+        generation = 1;
+        for (int i = 0; i < bounces; i++) {
+            int s = slot(bfeature[i]);
+            setKey[s] = bfeature[i];
+            setVal[s] = i;
+            setGen[s] = generation;
+        }
+    }
+
+}
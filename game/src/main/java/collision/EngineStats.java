@@ -0,0 +1,89 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Instrumentation of the collision engine: what the last step did, totals
+ * and a latency histogram of all steps since the last reset. A Simulation
+ * resets its stats when its level is set, so they cover one level.
+ *
+ * Switched on with -Dcollision.stats=true. ENABLED is a static final, so
+ * with it off every "if (EngineStats.ENABLED)" block is removed by the JIT
+ * and the engine runs exactly as without instrumentation. With it on, each
+ * Simulation step also emits a StepEvent to Java Flight Recorder, if a
+ * recording is running.
+ *
+ * The per call counters are kept in the ContactBuffer of the call, so
+ * concurrent calls never share them; an EngineStats belongs to one
+ * Simulation.
+ *
+ */
+
+package collision;
+
+import java.util.Arrays;
+
+public class EngineStats {
+
+    public static final boolean ENABLED = Boolean.getBoolean("collision.stats");
+
+    // Last step --------------------------------------------------------------
+    public int iterations;   // passes of the bounce loop
+    public int candidates;   // segments returned by the broadphase
+    public int tested;       // segments run through the exact tests
+    public int contacts;     // intersections found
+    public int bounces;      // intersections resolved
+    public int fallback;     // budget that ran out, see ContactBuffer
+    public long nanos;       // wall time of the step
+
+    // Since reset ------------------------------------------------------------
+    public long steps;
+    public long totalIterations, totalTested, totalContacts, totalBounces;
+    public long maxNanos;
+    public long fallbacks;   // steps that ran out of a budget
+
+    // steps by latency: bucket i counts the steps that took less than 2^i
+    // microseconds, and at least 2^(i-1)
+    final long[] histogram = new long[40];
+
+
+    // record a step, with the counters of its collision detection call
+    void record(ContactBuffer b, long nanos) {
+        iterations = b.iterations;
+        candidates = b.found;
+        tested     = b.tested;
+        contacts   = b.produced;
+        bounces    = b.bounces;
+        fallback   = b.fallback;
+        this.nanos = nanos;
+
+        steps++;
+        totalIterations += iterations;
+        totalTested     += tested;
+        totalContacts   += contacts;
+        totalBounces    += bounces;
+        if (nanos > maxNanos) maxNanos = nanos;
+        if (fallback != ContactBuffer.NONE) fallbacks++;
+        histogram[64-Long.numberOfLeadingZeros(nanos/1000)]++;
+    }
+
+    // upper bound in microseconds of the latency of fraction p of the steps
+    public long percentile(double p) {
+        long want = (long) Math.ceil(p*steps);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= want && seen > 0) return 1L << i;
+        }
+        return 0;
+    }
+
+    public void reset() {
+        steps = 0;
+        totalIterations = totalTested = totalContacts = totalBounces = 0;
+        maxNanos = 0;
+        fallbacks = 0;
+        Arrays.fill(histogram, 0);
+    }
+
+}
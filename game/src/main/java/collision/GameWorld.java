@@ -0,0 +1,435 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ * 
+ * A drawable plane, for 2D game... 
+ *   and a simple sample game.
+ *
+ * The game itself runs in a Simulation on the thread of a PhysicsLoop, this
+ * only forwards the mouse input to it and renders its state. A timer on the
+ * EDT takes the latest snapshot of the state each frame, and everything that
+ * is painted comes from that snapshot, so painting never waits for a step.
+ * The frame rate and the physics rate are independent (RATE and FPS, set
+ * with -Dcollision.rate and -Dcollision.fps): the ball is drawn in between
+ * the last two steps, by how far the frame is into the next one.
+ * The lines are drawn from the snapshot too: the level and the player lines
+ * the simulation accepted, as they were drawn.
+ *
+ * The world may be larger than the panel. A camera follows the ball, keeping
+ * it CAMERA_MARGIN away from the edges of the view, and the lines are drawn
+ * from WorldTiles, which renders only the tiles in view. Coordinates are in
+ * the world, except where they go to Swing.
+ *
+ * Only what changed is repainted: the ball at its old and new position, the
+ * rubber band line and the HUD when one of its values changes, or all of the
+ * view when the camera moves. The HUD text is rendered to an image, and only
+ * redrawn on change.
+ *
+ * Highscores are kept in a ScoreStore, which writes them to highscores.log
+ * on its own thread.
+ *
+ * With EngineStats.ENABLED the numbers of the last step are shown below the
+ * HUD, repainted every frame.
+ * 
+ */
+
+package collision;
+
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+import java.awt.event.ActionListener;
+import java.awt.event.ActionEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseEvent;
+
+import java.awt.image.BufferedImage;
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Color;
+import java.awt.Rectangle;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import collision.PhysicsLoop.Snapshot;
+
+
+public class GameWorld extends    JPanel 
+                       implements ActionListener,
+                                  MouseListener, 
+                                  MouseMotionListener {
+
+    // steps per second of the physics, and frames per second on screen
+    static final int RATE = Integer.getInteger("collision.rate", Simulation.RATE);
+    static final int FPS  = Integer.getInteger("collision.fps", 60);
+
+    BufferedImage ball;
+    double ballRadius = -1;   // of the image
+    WorldTiles tiles = new WorldTiles(48);
+    BufferedImage hud;
+    Timer timer;
+    PhysicsLoop physics;
+
+    // the snapshot on screen, and what of it the tiles show
+    Snapshot shown;
+    SegmentWorld shownLevel;
+    int[] shownGoal;
+    int generation = -1;
+    SegmentWorld player = new SegmentWorld(); // accepted player lines
+
+    int[] mp = {-1,-1,-1,-1}; // mouse position, in the world
+
+    // world position of the top left corner of the view, and the box
+    // {x1, y1, x2, y2} of the world it is kept in
+    int camX = 0, camY = 0;
+    int[] bounds = {0, 0, VIEW_W, VIEW_H};
+
+    // the ball as drawn, between the last two steps
+    double drawX, drawY;
+
+    // what is currently on screen, for dirty regions
+    int ballX = 0, ballY = 0;
+    int[] hudValues = {-1,-1,-1,-1}; // seconds, length, score, highscore
+
+    ScoreStore scores;        // null if the log could not be opened
+    boolean submitted = false; // the score of this run
+    Throwable shownError;      // the physics stopped
+
+    public GameWorld(int[][] levelData) {
+        setBackground(Color.BLACK);
+        addMouseMotionListener(this);
+        addMouseListener(this);
+
+        openScores();
+
+        physics = new PhysicsLoop(levelData, 1, RATE);
+        shown = physics.snapshot();
+        sync(shown);
+        drawX = shown.x;
+        drawY = shown.y;
+        follow();
+
+        drawBall(shown.radius);
+
+        hud = new BufferedImage(HUD_W, HUD_H, BufferedImage.TYPE_INT_ARGB);
+        updateHud();
+
+        // Start physics, and the timer that shows it
+        physics.start();
+        timer = new Timer(1000/FPS, this);
+        timer.start();
+    }
+
+    private void openScores() {
+        try {
+            scores = new ScoreStore(Paths.get("highscores.log"));
+        } catch (IOException e) {
+            System.err.println("highscores are not saved: "+e);
+            return;
+        }
+        // write what is still queued when the game is closed
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                scores.close();
+            } catch (IOException e) {
+                System.err.println("highscores not saved: "+e);
+            }
+        }));
+    }
+
+    private int highscore() {
+        return scores == null ? 0 : scores.best(shown.level);
+    }
+
+    public void setLevel(int[][] levelData, int level) {
+        physics.setLevel(levelData, level);
+        mp = new int[] {-1,-1,-1,-1};
+    }
+
+    // the world is used as it is, and must not be changed afterwards
+    public void setLevel(SegmentWorld levelData, int level) {
+        physics.setLevel(levelData, level);
+        mp = new int[] {-1,-1,-1,-1};
+    }
+
+    // the goal region {x1, y1, x2, y2} of this and the following levels
+    public void setGoal(int x1, int y1, int x2, int y2) {
+        physics.setGoal(x1, y1, x2, y2);
+    }
+
+
+    // Camera -----------------------------------------------------------------
+    static final int VIEW_W = 800, VIEW_H = 600;
+    static final int CAMERA_MARGIN = 160;
+
+    // the box of the level lines, and at least the view
+    private void measure(SegmentWorld w) {
+        int x1 = 0, y1 = 0, x2 = VIEW_W, y2 = VIEW_H;
+        for (int i = 0; i < w.size(); i++) {
+            x1 = Math.min(x1, (int)Math.floor(Math.min(w.x1(i), w.x2(i))));
+            y1 = Math.min(y1, (int)Math.floor(Math.min(w.y1(i), w.y2(i))));
+            x2 = Math.max(x2, (int)Math.ceil(Math.max(w.x1(i), w.x2(i)))+2);
+            y2 = Math.max(y2, (int)Math.ceil(Math.max(w.y1(i), w.y2(i)))+2);
+        }
+        bounds[0] = x1;
+        bounds[1] = y1;
+        bounds[2] = x2;
+        bounds[3] = y2;
+    }
+
+    // moves the camera after the ball, returns true if it moved
+    private boolean follow() {
+        int bx = (int)drawX, by = (int)drawY;
+        int x = Math.max(bx-VIEW_W+CAMERA_MARGIN, Math.min(camX, bx-CAMERA_MARGIN));
+        int y = Math.max(by-VIEW_H+CAMERA_MARGIN, Math.min(camY, by-CAMERA_MARGIN));
+        x = Math.max(bounds[0], Math.min(x, bounds[2]-VIEW_W));
+        y = Math.max(bounds[1], Math.min(y, bounds[3]-VIEW_H));
+        if (x == camX && y == camY) return false;
+        camX = x;
+        camY = y;
+        return true;
+    }
+
+
+    // repaint ----------------------------------------------------------------
+    static final int HUD_X = 645, HUD_Y = 5, HUD_W = 155, HUD_H = 66;
+    static final int STATS_X = 645, STATS_Y = 75, STATS_W = 155, STATS_H = 111;
+
+    public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+
+        // only the tiles of the part of the view that is being repainted
+        Rectangle c = g.getClipBounds();
+        if (c == null) c = new Rectangle(0, 0, VIEW_W, VIEW_H);
+        tiles.paint(g, c.x+camX, c.y+camY, c.width, c.height, camX, camY);
+
+        g.drawImage(ball,
+                    ((int)drawX-ball.getWidth()/2-camX),
+                    ((int)drawY-ball.getHeight()/2-camY),
+                    this);
+        if (mp[0] != -1) {
+            g.setColor(Color.GRAY);
+            g.drawLine(mp[0]-camX,mp[1]-camY,mp[2]-camX,mp[3]-camY);
+        }
+
+        if (c.intersects(HUD_X, HUD_Y, HUD_W, HUD_H)) {
+            g.drawImage(hud, HUD_X, HUD_Y, this);
+        }
+
+        if (shownError != null) {
+            g.setColor(Color.RED);
+            g.drawString("The game stopped: "+shownError, 20, VIEW_H/2);
+            g.drawString("Reset or choose a level to go on", 20, VIEW_H/2+15);
+        }
+
+        if (EngineStats.ENABLED &&
+            c.intersects(STATS_X, STATS_Y, STATS_W, STATS_H)) {
+            drawStats(g);
+        }
+
+        g.dispose();
+    }
+
+    // debug overlay, the last step and the latency of all steps of the level
+    private void drawStats(Graphics g) {
+        Snapshot s = shown;
+        g.setColor(Color.YELLOW);
+        g.drawString("Iterations", 650,90);
+        g.drawString(""+s.iterations, 730,90);
+        g.drawString("Candidates", 650,105);
+        g.drawString(""+s.candidates, 730,105);
+        g.drawString("Tested",     650,120);
+        g.drawString(""+s.tested, 730,120);
+        g.drawString("Contacts",   650,135);
+        g.drawString(s.contacts+" / "+s.bounces, 730,135);
+        g.drawString("Step",       650,150);
+        g.drawString(s.nanos/1000+" us", 730,150);
+        g.drawString("p99 / max",  650,165);
+        g.drawString(s.p99+" / "+s.maxNanos/1000+" us", 730,165);
+        g.drawString("Fallbacks",  650,180);
+        g.drawString(""+s.fallbacks, 730,180);
+    }
+
+    // redraw the HUD image if a value changed, returns true if it did
+    private boolean updateHud() {
+        Snapshot s = shown;
+        int seconds = s.time/1000;
+        int high = highscore();
+        if (hudValues[0] == seconds  && hudValues[1] == s.length &&
+            hudValues[2] == s.score  && hudValues[3] == high) return false;
+        hudValues[0] = seconds;
+        hudValues[1] = s.length;
+        hudValues[2] = s.score;
+        hudValues[3] = high;
+
+        Graphics2D g = hud.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, HUD_W, HUD_H);
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setColor(Color.RED);
+
+        // same positions as on the panel, relative to the HUD
+        int x = -HUD_X, y = -HUD_Y;
+        g.drawString("Time", 650+x,20+y);
+        g.drawString(readableTime(s.time),730+x,20+y);
+        g.drawString("Length",650+x,35+y);
+        g.drawString(""+s.length, 730+x,35+y);
+        g.drawString("Score",650+x,50+y);
+        g.drawString(""+s.score, 730+x,50+y);
+        g.drawString("HighScore", 650+x,65+y);
+        g.drawString(""+high,730+x,65+y);
+        g.dispose();
+        return true;
+    }
+
+    // repaint the area of a line, e.g. the rubber band
+    private void repaintLine(int[] l) {
+        int x = Math.min(l[0], l[2]);
+        int y = Math.min(l[1], l[3]);
+        repaint(x-camX, y-camY, Math.abs(l[2]-l[0])+1, Math.abs(l[3]-l[1])+1);
+    }
+
+
+    // the image of a ball of radius r
+    private void drawBall(double r) {
+        int d = (int) Math.round(r*2);
+        // could easily use an image for more fancy graphics
+        ball = new BufferedImage(d, d, BufferedImage.TYPE_INT_ARGB);
+        Graphics tmp = ball.createGraphics();
+        tmp.drawOval(0,0,d-1,d-1);
+        tmp.dispose();
+        ballRadius = r;
+    }
+
+
+    // Other functions --------------------------------------------------------
+    public static String readableTime(int ms) {
+        // ignores hours
+        return String.format("%02d:%02d",
+            (ms/60000)%60,
+            (ms/1000)%60
+            );
+    }
+
+    public void reset() {
+        physics.reset();
+        Arrays.fill(mp, -1);
+        repaint();
+    }
+
+    // back a second of game time
+    public void rewind() {
+        physics.rewind(RATE);
+    }
+
+    // brings the tiles up to date with a snapshot, returns true if they
+    // started over (new level, reset, rewind or goal)
+    private boolean sync(Snapshot s) {
+        boolean restart = s.world != shownLevel || s.generation != generation;
+        if (restart) {
+            player.clear();
+            if (s.world != shownLevel || s.goalArea != shownGoal) {
+                if (s.world != shownLevel) measure(s.world);
+                shownLevel = s.world;
+                shownGoal = s.goalArea;
+                tiles.set(shownLevel, player, shownGoal);
+            } else {
+                // same level, the baseline tiles stay
+                tiles.clear();
+            }
+            generation = s.generation;
+            submitted = s.goal;
+        }
+        for (int i = player.size(); i < s.lineCount; i++) {
+            int[] l = s.lines;
+            int k = i*4;
+            player.add(l[k], l[k+1], l[k+2], l[k+3]);
+            tiles.addLine(l[k], l[k+1], l[k+2], l[k+3]);
+            repaint(Math.min(l[k], l[k+2])-camX, Math.min(l[k+1], l[k+3])-camY,
+                    Math.abs(l[k+2]-l[k])+1, Math.abs(l[k+3]-l[k+1])+1);
+        }
+        return restart;
+    }
+
+
+    // Action events (Timer) --------------------------------------------------
+    public void actionPerformed(ActionEvent e) {
+        Snapshot s = physics.snapshot();
+        shown = s;
+        boolean restart = sync(s);
+        if (s.error != shownError) {
+            shownError = s.error;
+            restart = true;
+        }
+
+        // only queued here, written by the store's own thread
+        if (s.goal && !submitted) {
+            submitted = true;
+            if (scores != null) scores.submit(s.level, s.score, s.time);
+        }
+
+        double a = s.alpha(System.nanoTime());
+        drawX = s.prevX+(s.x-s.prevX)*a;
+        drawY = s.prevY+(s.y-s.prevY)*a;
+
+        if (s.radius != ballRadius) {
+            drawBall(s.radius);
+            restart = true;
+        }
+
+        // the ball at its old and new position, painted separately so the
+        // repaint manager does not merge them with the HUD
+        int d = ball.getWidth();
+        int x = (int)drawX-d/2;
+        int y = (int)drawY-d/2;
+        if (follow() || restart) {
+            paintImmediately(0, 0, VIEW_W, VIEW_H);
+        } else if (x != ballX || y != ballY) {
+            Rectangle r = new Rectangle(ballX-camX, ballY-camY, d, d);
+            r.add(new Rectangle(x-camX, y-camY, d, d));
+            paintImmediately(r);
+        }
+        ballX = x;
+        ballY = y;
+
+        if (updateHud()) paintImmediately(HUD_X, HUD_Y, HUD_W, HUD_H);
+
+        if (EngineStats.ENABLED) {
+            paintImmediately(STATS_X, STATS_Y, STATS_W, STATS_H);
+        }
+    }
+
+
+    // Mouse events -----------------------------------------------------------
+    public void mouseClicked(MouseEvent e) {}
+    public void mouseEntered(MouseEvent e) {}
+    public void mouseExited(MouseEvent e) {}
+    public void mousePressed(MouseEvent e) {
+        mp[0] = mp[2] = e.getX()+camX;
+        mp[1] = mp[3] = e.getY()+camY;
+        repaintLine(mp);
+    }
+    public void mouseReleased(MouseEvent e) {
+        mp[2] = e.getX()+camX;
+        mp[3] = e.getY()+camY;
+
+        // drawn once the simulation took it, a line on the ball resets there
+        physics.addLine(mp[0],mp[1],mp[2],mp[3]);
+        repaintLine(mp);
+        mp = new int[] {-1,-1,-1,-1};
+    }
+
+    public void mouseMoved(MouseEvent e) {}
+    public void mouseDragged(MouseEvent e) {
+        repaintLine(mp);
+        mp[2] = e.getX()+camX;
+        mp[3] = e.getY()+camY;
+        repaintLine(mp);
+    }
+
+}
@@ -0,0 +1,53 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * State of a spatial hash query: the result buffer and the marks used to
+ * return each segment only once.
+ *
+ * Keeping this outside the hash lets several threads query the same hash at
+ * the same time, each with its own HashQuery, as long as nobody inserts.
+ *
+ */
+
+package collision;
+
+import java.util.Arrays;
+
+public class HashQuery {
+
+    // segment id -> last query it was returned by
+    int[] stamp = new int[64];
+    int   query = 0;
+
+    // result buffer of the last query
+    int[] hits = new int[64];
+
+
+    // start a new query, returns its stamp
+    int next() {
+        if (++query == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            query = 1;
+        }
+        return query;
+    }
+
+    // add id unless this query has already returned it, returns the new count
+    int add(int id, int n) {
+        if (id >= stamp.length) {
+            stamp = Arrays.copyOf(stamp, Math.max(id+1, stamp.length*2));
+        }
+        if (stamp[id] == query) return n;
+        stamp[id] = query;
+        if (n == hits.length) hits = Arrays.copyOf(hits, n*2);
+        hits[n] = id;
+        return n+1;
+    }
+
+    public int[] hits() {
+        return hits;
+    }
+
+}
@@ -0,0 +1,166 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Level files: the segments of a level together with their spatial hash,
+ * so loading is a few bulk reads from a memory mapped file, whatever it
+ * cost to build the index.
+ *
+ * File layout (big endian):
+ *
+ *   int magic, int version, int segment count n
+ *   double[n] x1, y1, x2, y2, ux, uy       (see SegmentWorld)
+ *   double cell size, int buckets, int entries
+ *   int[buckets] head
+ *   int[entries] next, segment, cell x, cell y   (see SpatialHash)
+ *
+ * Run as a program to write the built in levels, or a random stress level,
+ * to a file:
+ *
+ *     java -cp game/target/classes collision.LevelFile level1.cdl 1
+ *     java -cp game/target/classes collision.LevelFile stress.cdl random 50000
+ *
+ */
+
+package collision;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public class LevelFile {
+
+    static final int MAGIC   = 0x43444c56; // "CDLV"
+    static final int VERSION = 1;
+
+
+    // Write ------------------------------------------------------------------
+    public static void write(Path file, SegmentWorld w) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+
+            int n = w.count;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            writeDoubles(out, w.x1, n);
+            writeDoubles(out, w.y1, n);
+            writeDoubles(out, w.x2, n);
+            writeDoubles(out, w.y2, n);
+            writeDoubles(out, w.ux, n);
+            writeDoubles(out, w.uy, n);
+
+            SpatialHash h = w.index;
+            out.writeDouble(h.cellSize);
+            out.writeInt(h.head.length);
+            out.writeInt(h.entries);
+            writeInts(out, h.head, h.head.length);
+            writeInts(out, h.next, h.entries);
+            writeInts(out, h.entrySeg, h.entries);
+            writeInts(out, h.entryX, h.entries);
+            writeInts(out, h.entryY, h.entries);
+        }
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] a, int n)
+            throws IOException {
+        for (int i = 0; i < n; i++) out.writeDouble(a[i]);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] a, int n)
+            throws IOException {
+        for (int i = 0; i < n; i++) out.writeInt(a[i]);
+    }
+
+
+    // Read -------------------------------------------------------------------
+    public static SegmentWorld read(Path file) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+
+        if (buf.getInt() != MAGIC) {
+            throw new IOException("not a level file: "+file);
+        }
+        if (buf.getInt() != VERSION) {
+            throw new IOException("unsupported level version: "+file);
+        }
+
+        int n = buf.getInt();
+        double[] x1 = readDoubles(buf, n);
+        double[] y1 = readDoubles(buf, n);
+        double[] x2 = readDoubles(buf, n);
+        double[] y2 = readDoubles(buf, n);
+        double[] ux = readDoubles(buf, n);
+        double[] uy = readDoubles(buf, n);
+
+        double cellSize = buf.getDouble();
+        int buckets = buf.getInt();
+        int entries = buf.getInt();
+        if (Integer.bitCount(buckets) != 1) {
+            throw new IOException("corrupt level file: "+file);
+        }
+        int[] head     = readInts(buf, buckets);
+        int[] next     = readInts(buf, entries);
+        int[] entrySeg = readInts(buf, entries);
+        int[] entryX   = readInts(buf, entries);
+        int[] entryY   = readInts(buf, entries);
+
+        SpatialHash index = new SpatialHash(cellSize, head, next, entrySeg,
+                                            entryX, entryY, entries);
+        return new SegmentWorld(n, x1, y1, x2, y2, ux, uy, index);
+    }
+
+    private static double[] readDoubles(MappedByteBuffer buf, int n) {
+        double[] a = new double[n];
+        DoubleBuffer d = buf.asDoubleBuffer();
+        d.get(a);
+        buf.position(buf.position()+n*8);
+        return a;
+    }
+
+    private static int[] readInts(MappedByteBuffer buf, int n) {
+        int[] a = new int[n];
+        IntBuffer d = buf.asIntBuffer();
+        d.get(a);
+        buf.position(buf.position()+n*4);
+        return a;
+    }
+
+
+    // Export tool ------------------------------------------------------------
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: LevelFile <file> <1-4 | random count>");
+            System.exit(1);
+        }
+
+        SegmentWorld w = new SegmentWorld();
+        if (args[1].equals("random")) {
+            int n = Integer.parseInt(args[2]);
+            int size = (int) (Math.sqrt(n)*80);
+            Random rnd = new Random(n);
+            for (int i = 0; i < n; i++) {
+                int x = rnd.nextInt(size);
+                int y = rnd.nextInt(size);
+                w.add(x, y, x+rnd.nextInt(121)-60, y+rnd.nextInt(121)-60);
+            }
+        } else {
+            for (int[] l : Levels.all[Integer.parseInt(args[1])-1]) w.add(l);
+        }
+
+        write(Paths.get(args[0]), w);
+    }
+
+}
@@ -0,0 +1,69 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The levels of the sample game, as lists of lines {x1, y1, x2, y2}.
+ *
+ */
+
+package collision;
+
+public class Levels {
+
+    // Levels -----------------------------------------------------------------
+    static final int[][] level1 = {
+        {1,   1,   1,   598 }, // outer walls
+        {1,   1,   798, 1   }, // --
+        {1,   598, 798, 598 }, // --
+        {798, 1,   798, 598 }, // --
+        {1,   81,  41,  121 }, // start ramp
+        {728, 538, 728, 598 }, // bucket/goal
+        {728, 537, 738, 598 },
+    };
+
+    static final int[][] level2 = {
+        {1,   1,   1,   598 }, // outer walls
+        {1,   1,   798, 1   }, // --
+        {1,   598, 798, 598 }, // --
+        {798, 1,   798, 598 }, // --
+        {1,   81,  41,  121 }, // start ramp
+        {1,   200, 500, 200 },
+        {798, 400, 200, 400 },
+        {728, 538, 728, 598 }, // bucket/goal
+        {728, 537, 738, 598 },
+    };
+
+    static final int[][] level3 = {
+        {1,   1,   1,   598 }, // outer walls
+        {1,   1,   798, 1   }, // --
+        {1,   598, 798, 598 }, // --
+        {798, 1,   798, 598 }, // --
+        {1,   81,  41,  121 }, // start ramp
+        {300, 1,   300, 300 },
+        {400, 300, 400, 598 },
+        {728, 538, 728, 598 }, // bucket/goal
+        {728, 537, 738, 598 },
+    };
+
+    static final int[][] level4 = {
+        {1,   1,   1,   598 }, // outer walls
+        {1,   1,   798, 1   }, // --
+        {1,   598, 798, 598 }, // --
+        {798, 1,   798, 598 }, // --
+        {1,   81,  41,  121 }, // start ramp
+        {50,  31,  100, 81  },
+        {80,  81,  80,  450 },
+        {41,  121, 41,  500 },
+        {41,  480, 61,  540 },
+        {41,  500, 81,  540 },
+        {41,  520, 101, 540 },
+        {41,  540, 400, 540 },
+        {400, 400, 400, 798 },
+        {728, 538, 728, 598 }, // bucket/goal
+        {728, 537, 738, 598 },
+    };
+
+    static final int[][][] all = { level1, level2, level3, level4 };
+
+}
@@ -0,0 +1,106 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ * 
+ * launcher.
+ *
+ * Level files (see LevelFile) given as arguments are added to the menu after
+ * the built in levels.
+ *
+ */
+
+package collision;
+
+import javax.swing.JFrame;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JLabel;
+
+import java.awt.event.ActionListener;
+import java.awt.event.ActionEvent;
+import java.awt.GraphicsEnvironment;
+import java.awt.GraphicsDevice;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+public class MyGame extends JFrame implements ActionListener {
+
+    private JMenuItem l1 = new JMenuItem("Level 1");
+    private JMenuItem l2 = new JMenuItem("Level 2");
+    private JMenuItem l3 = new JMenuItem("Level 3");
+    private JMenuItem l4 = new JMenuItem("Level 4");
+    private JMenuItem rewind = new JMenuItem("Rewind");
+
+    private JMenuItem[] fileItems;
+    private SegmentWorld[] fileLevels;
+
+    GameWorld gw = new GameWorld(Levels.level1);
+
+    public MyGame() {
+        this(new SegmentWorld[0]);
+    }
+
+    public MyGame(SegmentWorld[] levels) {
+        JMenuBar main = new JMenuBar();
+        this.setJMenuBar(main);
+        main.add(l1);
+        l1.addActionListener(this);
+        main.add(l2);
+        l2.addActionListener(this);
+        main.add(l3);
+        l3.addActionListener(this);
+        main.add(l4);
+        l4.addActionListener(this);
+        fileLevels = levels;
+        fileItems = new JMenuItem[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            fileItems[i] = new JMenuItem("Level "+(i+5));
+            main.add(fileItems[i]);
+            fileItems[i].addActionListener(this);
+        }
+        main.add(rewind);
+        rewind.addActionListener(this);
+        // Lazy man's layout fixing.
+        main.add(new JLabel("                                              "+
+                            "                                              "+
+                            "                    "));
+        add(gw);
+
+        GraphicsDevice screen = GraphicsEnvironment
+                                .getLocalGraphicsEnvironment()
+                                .getDefaultScreenDevice();
+        int x = (screen.getDisplayMode().getWidth() / 2) - 400;
+        int y = (screen.getDisplayMode().getHeight() / 2) - 300;
+
+        this.setResizable(false); // annoying, as it is easy to do by accident
+        this.setLocation(x, y);
+        this.setTitle("MyGame");
+        this.setSize(804, 648);
+        this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        this.setVisible(true);
+    }
+
+    public void actionPerformed(ActionEvent e) {
+        if      (e.getSource() == l1) gw.setLevel(Levels.level1,1);
+        else if (e.getSource() == l2) gw.setLevel(Levels.level2,2);
+        else if (e.getSource() == l3) gw.setLevel(Levels.level3,3);
+        else if (e.getSource() == l4) gw.setLevel(Levels.level4,4);
+        else if (e.getSource() == rewind) gw.rewind();
+        else {
+            for (int i = 0; i < fileItems.length; i++) {
+                if (e.getSource() == fileItems[i]) gw.setLevel(fileLevels[i],i+5);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        SegmentWorld[] levels = new SegmentWorld[args.length];
+        for (int i = 0; i < args.length; i++) {
+            levels[i] = LevelFile.read(Paths.get(args[i]));
+        }
+        new MyGame(levels);
+    }
+
+}
@@ -0,0 +1,327 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Runs the Simulation of the game on its own thread, at a fixed rate of
+ * steps per second.
+ *
+ * The thread keeps an accumulator of the wall time that passed, and runs as
+ * many steps as fit in it whenever it wakes up, so the game keeps its speed
+ * whatever the rate. After a stall at most MAX_STEPS are run to catch up,
+ * the rest of the time is dropped.
+ *
+ * Input goes in as commands (a line, a reset, a rewind, a new level or goal)
+ * through a lock-free queue, and is applied before the next step, the way
+ * GameWorld used to apply mouse events between two timer steps. A line drawn
+ * on the ball resets the level there.
+ *
+ * An exception in a command or a step does not end the thread: it is printed,
+ * published in the Snapshot, and the game stands still until the next reset
+ * or level.
+ *
+ * After the steps what the screen needs is written to a Snapshot and
+ * published, with the ball of the step before, so the screen can draw it in
+ * between the two at any frame rate (see Snapshot.alpha). Snapshots are
+ * double buffered, with a third buffer between the two sides: the physics
+ * thread writes its own, and swaps it with the latest one in a single
+ * getAndSet; the reader swaps its own with the latest one the same way if a
+ * newer one was published. So neither side ever waits
+ * for the other, and a snapshot never changes while it is read.
+ *
+ * Usage:
+ *
+ *     PhysicsLoop physics = new PhysicsLoop(level, 1, 120);
+ *     physics.start();
+ *     physics.addLine(x1, y1, x2, y2);          // from any thread
+ *     PhysicsLoop.Snapshot s = physics.snapshot(); // from one thread
+ *
+ */
+
+package collision;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class PhysicsLoop {
+
+    static final int MAX_STEPS = 8;   // run at most to catch up
+
+    private final long stepNanos;
+
+    // Snapshot ---------------------------------------------------------------
+    // the state of the game after a step. Filled by the physics thread, and
+    // not changed while published.
+    public static class Snapshot {
+        public long tick;
+        public double x, y;          // ball
+        public double radius;
+        public double prevX, prevY;  // ball before the last step
+        public long at;              // System.nanoTime the state is due at
+        public long stepNanos;
+        public int time, length, score;
+        public boolean goal;
+        public Throwable error;      // the physics stopped, until a reset
+
+        public int level;            // number, for the highscores
+        public SegmentWorld world;   // level lines, never changed
+        public int[] goalArea;       // {x1, y1, x2, y2}, never changed
+
+        // bumped on every reset, rewind and level change, the player lines
+        // start over
+        public int generation;
+
+        // accepted player lines since the reset, 4 ints each. Only appended
+        // to, a reset starts a new array.
+        public int[] lines;
+        public int lineCount;
+
+        // EngineStats of the step, if EngineStats.ENABLED
+        public int iterations, candidates, tested, contacts, bounces;
+        public long nanos, p99, maxNanos, fallbacks;
+
+        // how far from prev to the ball the screen is at time now: drawn
+        // one step behind, so the ball moves smoothly between steps
+        public double alpha(long now) {
+            return Math.max(0, Math.min(1, (now-at)/(double) stepNanos));
+        }
+    }
+
+    private final Snapshot[] buffers = {new Snapshot(), new Snapshot(), new Snapshot()};
+
+    // index of the latest buffer, FRESH until the reader takes it
+    private static final int FRESH = 4;
+    private final AtomicInteger latest = new AtomicInteger(1);
+    private int back  = 0;  // physics thread
+    private int front = 2;  // reader
+
+
+    // Commands ---------------------------------------------------------------
+    private static final int LINE = 1, RESET = 2, LEVEL = 3, GOAL = 4, REWIND = 5;
+
+    private static class Command {
+        final int type;
+        final int[] args;
+        final SegmentWorld world;
+
+        Command(int type, int[] args, SegmentWorld world) {
+            this.type = type;
+            this.args = args;
+            this.world = world;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Command> commands =
+        new ConcurrentLinkedQueue<>();
+
+
+    // Physics thread state ---------------------------------------------------
+    private final Simulation sim;
+    private long tick = 0;
+    private double prevX = 18, prevY = 18;
+    private int level;
+    private int generation = 0;
+    private int[] goalArea;
+    private int[] lines = new int[64];
+    private int lineCount = 0;
+    private Throwable error;     // steps stopped, until a reset
+
+    private final Thread thread;
+    private volatile boolean running = true;
+
+
+    public PhysicsLoop(int[][] levelData, int level, int rate) {
+        this(world(levelData), level, rate);
+    }
+
+    // rate in steps per second, Simulation.RATE is the game as it always was
+    public PhysicsLoop(SegmentWorld level, int number, int rate) {
+        sim = new Simulation(level);
+        sim.setRate(rate);
+        stepNanos = 1_000_000_000L/rate;
+        this.level = number;
+        goalArea = sim.goalArea.clone();
+        publish(System.nanoTime());
+
+        thread = new Thread(this::run, "Physics");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+
+    // Input, from any thread -------------------------------------------------
+    public void addLine(int x1, int y1, int x2, int y2) {
+        commands.add(new Command(LINE, new int[] {x1, y1, x2, y2}, null));
+    }
+
+    public void reset() {
+        commands.add(new Command(RESET, null, null));
+    }
+
+    // back the given number of steps, as far as Simulation.HISTORY reaches
+    public void rewind(int steps) {
+        commands.add(new Command(REWIND, new int[] {steps}, null));
+    }
+
+    public void setLevel(int[][] levelData, int number) {
+        setLevel(world(levelData), number);
+    }
+
+    // the world is used as it is, and must not be changed afterwards
+    public void setLevel(SegmentWorld level, int number) {
+        commands.add(new Command(LEVEL, new int[] {number}, level));
+    }
+
+    public void setGoal(int x1, int y1, int x2, int y2) {
+        Simulation.checkGoal(x1, y1, x2, y2);
+        commands.add(new Command(GOAL, new int[] {x1, y1, x2, y2}, null));
+    }
+
+
+    // Output, from one thread ------------------------------------------------
+    // the latest snapshot, valid until the next call
+    public Snapshot snapshot() {
+        if ((latest.get() & FRESH) != 0) front = latest.getAndSet(front) & 3;
+        return buffers[front];
+    }
+
+
+    // Physics thread ---------------------------------------------------------
+    private void run() {
+        long last = System.nanoTime();
+        long time = 0;   // accumulated, not yet stepped
+        while (running) {
+            long now = System.nanoTime();
+            time = Math.min(time+now-last, MAX_STEPS*stepNanos);
+            last = now;
+
+            if (time >= stepNanos) {
+                try {
+                    for (; time >= stepNanos; time -= stepNanos) {
+                        for (Command c; (c = commands.poll()) != null; ) apply(c);
+                        if (error != null) continue;
+                        prevX = sim.p[0];
+                        prevY = sim.p[1];
+                        sim.step();
+                        tick++;
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("physics stopped at step "+tick+":");
+                    e.printStackTrace();
+                    error = e;
+                    time = 0;
+                }
+                // the state of the last step was due this long ago
+                publish(now-time);
+            }
+            LockSupport.parkNanos(stepNanos-time);
+        }
+    }
+
+    private void apply(Command c) {
+        int[] a = c.args;
+        switch (c.type) {
+        case LINE:
+            if (!sim.addLine(a[0], a[1], a[2], a[3])) {
+                restart();
+                sim.reset();
+                break;
+            }
+            if (lineCount*4 == lines.length) {
+                // readers may hold the old array, it is never written again
+                int[] l = new int[lines.length*2];
+                System.arraycopy(lines, 0, l, 0, lineCount*4);
+                lines = l;
+            }
+            System.arraycopy(a, 0, lines, lineCount*4, 4);
+            lineCount++;
+            break;
+        case RESET:
+            restart();
+            sim.reset();
+            break;
+        case REWIND:
+            if (sim.rewind(a[0]) == 0) break;
+            // the lines drawn since are gone, readers may hold the old array
+            generation++;
+            lineCount = sim.lines;
+            lines = Arrays.copyOf(lines, Math.max(64, lineCount*4));
+            break;
+        case LEVEL:
+            level = a[0];
+            restart();
+            sim.setLevel(c.world);
+            break;
+        case GOAL:
+            sim.setGoal(a[0], a[1], a[2], a[3]);
+            goalArea = a;
+            generation++;
+            break;
+        }
+    }
+
+    // the player lines start over
+    private void restart() {
+        error = null;
+        generation++;
+        lines = new int[64];
+        lineCount = 0;
+    }
+
+    private void publish(long at) {
+        Snapshot s = buffers[back];
+        s.tick     = tick;
+        s.x        = sim.p[0];
+        s.y        = sim.p[1];
+        s.radius   = sim.radius;
+        s.prevX    = prevX;
+        s.prevY    = prevY;
+        s.at       = at;
+        s.stepNanos = stepNanos;
+        s.time     = sim.time;
+        s.length   = sim.length;
+        s.score    = sim.score;
+        s.goal     = sim.goal;
+        s.error    = error;
+        s.level    = level;
+        s.world    = sim.worldData;
+        s.goalArea = goalArea;
+        s.generation = generation;
+        s.lines     = lines;
+        s.lineCount = lineCount;
+
+        if (EngineStats.ENABLED) {
+            EngineStats st = sim.stats;
+            s.iterations = st.iterations;
+            s.candidates = st.candidates;
+            s.tested     = st.tested;
+            s.contacts   = st.contacts;
+            s.bounces    = st.bounces;
+            s.nanos      = st.nanos;
+            s.p99        = st.percentile(0.99);
+            s.maxNanos   = st.maxNanos;
+            s.fallbacks  = st.fallbacks;
+        }
+
+        back = latest.getAndSet(back | FRESH) & 3;
+    }
+
+
+    // Helper functions -------------------------------------------------------
+    private static SegmentWorld world(int[][] levelData) {
+        SegmentWorld w = new SegmentWorld();
+        for (int[] l : levelData) w.add(l);
+        return w;
+    }
+
+}
@@ -0,0 +1,387 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The lines the player drew, compacted for the collision detection.
+ *
+ * Players draw many short lines, often on top of or in line with each other,
+ * and every segment costs two circle and two line tests wherever the ball
+ * may hit it. So a new line is
+ *
+ *   merged   with each segment it is collinear with and overlaps or
+ *            touches, into one segment covering both. The capsule of the
+ *            union is the union of their capsules, nothing moves.
+ *   joined   at an endpoint where exactly one other segment ends, into one
+ *            segment from the far end of the other to its own far end, if
+ *            every drawn vertex it replaces is within TOLERANCE of it. Not
+ *            near the ball, which may be resting on them.
+ *
+ * until neither applies. Only segments next to the new line change, what is
+ * compacted stays as it is. Segments that still share an endpoint share its
+ * circle: addTo leaves it to the first of them (SegmentWorld.SHARED1/2).
+ *
+ * A segment that is merged or joined is removed, and the new one goes last.
+ * update replaces the segments of a world from the first one that changed
+ * on, as the spatial hash can only drop its newest segments. The number of
+ * segments at each endpoint is kept between the calls to set the flags. So
+ * a stroke that continues the last one replaces a segment or two, not all
+ * of the player lines.
+ *
+ * Coordinates are the pixels of the mouse, so all tests but the tolerance
+ * are exact.
+ *
+ * The lines as they were drawn are kept too, for the replays.
+ *
+ * state() returns the lines as they are, for a checkpoint, and shares the
+ * arrays with it: the next change copies them first (copy on write). So a
+ * checkpoint costs nothing, and one taken every step allocates only after
+ * the lines changed.
+ *
+ */
+
+package collision;
+
+import java.util.Arrays;
+
+class PlayerLines {
+
+    static final double TOLERANCE = 0.25; // px
+
+    // segments, 4 ints each
+    int[] lines = new int[64];
+    int count = 0;
+
+    // per segment the drawn vertices it replaced, x and y each
+    int[][] dropped = new int[16][];
+
+    // the lines as they were drawn, 4 ints each
+    int[] drawn = new int[64];
+    int drawnCount = 0;
+
+    private static final int[] NONE = {};
+
+    // the arrays are shared with this, if not null
+    private State state;
+
+    // the first segment that changed since the world was updated
+    private int changed = 0;
+
+    // the endpoints of the segments in the world of addTo and update, with
+    // the number of them at each: open addressing on the point, -1 is a free
+    // slot. A point no segment ends at any more keeps its slot until the
+    // table is rebuilt.
+    private long[] pointKey = new long[64];
+    private int[] pointRefs = new int[64];
+    private int points = 0; // slots taken
+
+    {
+        Arrays.fill(pointRefs, -1);
+    }
+
+    static final class State {
+        final int[] lines;
+        final int[][] dropped;
+        final int count;
+        final int[] drawn;
+        final int drawnCount;
+
+        State(int[] lines, int[][] dropped, int count,
+              int[] drawn, int drawnCount) {
+            this.lines = lines;
+            this.dropped = dropped;
+            this.count = count;
+            this.drawn = drawn;
+            this.drawnCount = drawnCount;
+        }
+    }
+
+
+    // adds the line (x1,y1)-(x2,y2), without moving anything within keep of
+    // (bx,by)
+    void add(int x1, int y1, int x2, int y2, double bx, double by, double keep) {
+        if (state != null) {
+            lines = lines.clone();
+            dropped = dropped.clone();
+            drawn = drawn.clone();
+            state = null;
+        }
+        if (drawnCount*4 == drawn.length) drawn = Arrays.copyOf(drawn, drawnCount*8);
+        drawn[drawnCount*4]   = x1;
+        drawn[drawnCount*4+1] = y1;
+        drawn[drawnCount*4+2] = x2;
+        drawn[drawnCount*4+3] = y2;
+        drawnCount++;
+
+        int[] l = {x1, y1, x2, y2};
+        int[] d = NONE;
+
+        boolean again = true;
+        while (again) {
+            again = false;
+            for (int i = 0; i < count && !again; i++) {
+                if (merge(l, i)) {
+                    d = concat(d, dropped[i], NONE);
+                    remove(i);
+                    changed = Math.min(changed, i);
+                    again = true;
+                }
+            }
+            for (int end = 0; end <= 2 && !again; end += 2) {
+                int i = join(l, d, end, bx, by, keep);
+                if (i < 0) continue;
+
+                int[] v = {l[end], l[end+1]};
+                int k = i*4;
+                boolean first = lines[k] == v[0] && lines[k+1] == v[1];
+                int wx = first ? lines[k+2] : lines[k];
+                int wy = first ? lines[k+3] : lines[k+1];
+                l = end == 0 ? new int[] {wx, wy, l[2], l[3]}
+                             : new int[] {l[0], l[1], wx, wy};
+                d = concat(d, dropped[i], v);
+                remove(i);
+                changed = Math.min(changed, i);
+                again = true;
+            }
+        }
+
+        if (count*4 == lines.length) lines = Arrays.copyOf(lines, count*8);
+        if (count == dropped.length) dropped = Arrays.copyOf(dropped, count*2);
+        System.arraycopy(l, 0, lines, count*4, 4);
+        dropped[count] = d;
+        changed = Math.min(changed, count++);
+    }
+
+    void clear() {
+        if (state != null) {
+            lines = new int[64];
+            dropped = new int[16][];
+            drawn = new int[64];
+            state = null;
+        } else {
+            Arrays.fill(dropped, 0, count, null);
+        }
+        count = 0;
+        drawnCount = 0;
+
+        // the caller removes them from the world
+        Arrays.fill(pointRefs, -1);
+        points = 0;
+        changed = 0;
+    }
+
+    // the lines as they are now, never changed
+    State state() {
+        if (state == null) state = new State(lines, dropped, count, drawn, drawnCount);
+        return state;
+    }
+
+    // back to the lines of s
+    void restore(State s) {
+        lines = s.lines;
+        dropped = s.dropped;
+        count = s.count;
+        drawn = s.drawn;
+        drawnCount = s.drawnCount;
+        state = s;
+        changed = 0;
+    }
+
+
+    // adds the segments to w, every shared endpoint circle is tested by the
+    // first segment at it only
+    void addTo(SegmentWorld w) {
+        points(count);
+        for (int i = 0; i < count; i++) add(w, i);
+        changed = count;
+    }
+
+    // makes the segments of w from base on these, as addTo would, by
+    // replacing those from the first one that changed since the last call.
+    // w must hold what addTo or update left there.
+    void update(SegmentWorld w, int base) {
+        int from = base+changed;
+        for (int j = from; j < w.count; j++) {
+            int x1 = (int) w.x1[j], y1 = (int) w.y1[j];
+            int x2 = (int) w.x2[j], y2 = (int) w.y2[j];
+            point(x1, y1, -1);
+            if (x1 != x2 || y1 != y2) point(x2, y2, -1);
+        }
+        w.truncate(from);
+
+        // points no segment ends at any more are dropped once they fill it
+        if ((points+(count-changed)*2)*2 > pointKey.length) {
+            points(count);
+            for (int j = base; j < from; j++) {
+                int x1 = (int) w.x1[j], y1 = (int) w.y1[j];
+                int x2 = (int) w.x2[j], y2 = (int) w.y2[j];
+                point(x1, y1, 1);
+                if (x1 != x2 || y1 != y2) point(x2, y2, 1);
+            }
+        }
+
+        for (int i = changed; i < count; i++) add(w, i);
+        changed = count;
+    }
+
+    // adds segment i to w, leaving the endpoint circles already there to the
+    // segments at them
+    private void add(SegmentWorld w, int i) {
+        int k = i*4;
+        int flags = 0;
+        if (point(lines[k], lines[k+1], 1) > 0) {
+            flags |= SegmentWorld.SHARED1;
+        }
+        if ((lines[k] != lines[k+2] || lines[k+1] != lines[k+3]) &&
+            point(lines[k+2], lines[k+3], 1) > 0) {
+            flags |= SegmentWorld.SHARED2;
+        }
+        w.add(lines[k], lines[k+1], lines[k+2], lines[k+3], flags);
+    }
+
+
+    // Merge ------------------------------------------------------------------
+    // if l and segment i lie on one line and overlap or touch, makes l their
+    // union and returns true
+    private boolean merge(int[] l, int i) {
+        int k = i*4;
+        int ax = l[0], ay = l[1], bx = l[2], by = l[3];
+        int cx = lines[k], cy = lines[k+1], ex = lines[k+2], ey = lines[k+3];
+
+        // direction of the line, from whichever is not a point
+        long ox = ax, oy = ay;
+        long dx = bx-ax, dy = by-ay;
+        if (dx == 0 && dy == 0) {
+            ox = cx;
+            oy = cy;
+            dx = ex-cx;
+            dy = ey-cy;
+        }
+        if (dx == 0 && dy == 0) return ax == cx && ay == cy;
+
+        // on the line
+        if (dx*(ay-oy)-dy*(ax-ox) != 0 || dx*(by-oy)-dy*(bx-ox) != 0 ||
+            dx*(cy-oy)-dy*(cx-ox) != 0 || dx*(ey-oy)-dy*(ex-ox) != 0) return false;
+
+        // and where along it
+        long ta = dx*(ax-ox)+dy*(ay-oy), tb = dx*(bx-ox)+dy*(by-oy);
+        long tc = dx*(cx-ox)+dy*(cy-oy), te = dx*(ex-ox)+dy*(ey-oy);
+        if (Math.max(ta, tb) < Math.min(tc, te) ||
+            Math.max(tc, te) < Math.min(ta, tb)) return false;
+
+        // the first of the lowest and of the highest, in the order a b c e
+        long lo = ta, hi = ta;
+        int lx = ax, ly = ay, hx = ax, hy = ay;
+        if (tb < lo) { lo = tb; lx = bx; ly = by; }
+        if (tb > hi) { hi = tb; hx = bx; hy = by; }
+        if (tc < lo) { lo = tc; lx = cx; ly = cy; }
+        if (tc > hi) { hi = tc; hx = cx; hy = cy; }
+        if (te < lo) { lx = ex; ly = ey; }
+        if (te > hi) { hx = ex; hy = ey; }
+        l[0] = lx;
+        l[1] = ly;
+        l[2] = hx;
+        l[3] = hy;
+        return true;
+    }
+
+
+    // Join -------------------------------------------------------------------
+    // the segment l can be joined with at its endpoint end (0 or 2), or -1.
+    // d are the vertices l already replaced.
+    private int join(int[] l, int[] d, int end,
+                     double bx, double by, double keep) {
+        int vx = l[end], vy = l[end+1];
+        int ux = l[2-end], uy = l[3-end];
+
+        int found = -1;
+        for (int i = 0; i < count; i++) {
+            int k = i*4;
+            if ((lines[k]   == vx && lines[k+1] == vy) ||
+                (lines[k+2] == vx && lines[k+3] == vy)) {
+                if (found >= 0) return -1;
+                found = i;
+            }
+        }
+        if (found < 0) return -1;
+
+        int k = found*4;
+        boolean first = lines[k] == vx && lines[k+1] == vy;
+        int wx = first ? lines[k+2] : lines[k];
+        int wy = first ? lines[k+3] : lines[k+1];
+        if (wx == ux && wy == uy) return -1;
+
+        if (distance(vx, vy, wx, wy, ux, uy) > TOLERANCE) return -1;
+        if (!within(d, wx, wy, ux, uy)) return -1;
+        if (!within(dropped[found], wx, wy, ux, uy)) return -1;
+
+        if (CollisionDetection.toClose(bx, by, keep, wx, wy, ux, uy) ||
+            CollisionDetection.toClose(bx, by, keep, lines[k], lines[k+1],
+                                       lines[k+2], lines[k+3])) return -1;
+        return found;
+    }
+
+    private static boolean within(int[] v, int x1, int y1, int x2, int y2) {
+        for (int j = 0; j < v.length; j += 2) {
+            if (distance(v[j], v[j+1], x1, y1, x2, y2) > TOLERANCE) return false;
+        }
+        return true;
+    }
+
+    // distance of (px,py) to the segment (x1,y1)-(x2,y2)
+    private static double distance(double px, double py,
+            double x1, double y1, double x2, double y2) {
+        double dx = x2-x1, dy = y2-y1;
+        double l2 = dx*dx+dy*dy;
+        double t = l2 == 0 ? 0 : ((px-x1)*dx+(py-y1)*dy)/l2;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(px-x1-t*dx, py-y1-t*dy);
+    }
+
+
+    // Helper functions -------------------------------------------------------
+    private void remove(int i) {
+        System.arraycopy(lines, (i+1)*4, lines, i*4, (count-i-1)*4);
+        System.arraycopy(dropped, i+1, dropped, i, count-i-1);
+        dropped[--count] = null;
+    }
+
+    private static int[] concat(int[] a, int[] b, int[] c) {
+        int[] r = Arrays.copyOf(a, a.length+b.length+c.length);
+        System.arraycopy(b, 0, r, a.length, b.length);
+        System.arraycopy(c, 0, r, a.length+b.length, c.length);
+        return r;
+    }
+
+    // an empty endpoint table for the endpoints of n segments, at most half
+    // full
+    private void points(int n) {
+        if (pointKey.length < n*4) {
+            int size = Integer.highestOneBit(n*4-1) << 1;
+            pointKey = new long[size];
+            pointRefs = new int[size];
+        }
+        Arrays.fill(pointRefs, -1);
+        points = 0;
+    }
+
+    // adds d to the segments at the point, returns how many there were
+    private int point(int x, int y, int d) {
+        long key = ((long)x << 32) | (y & 0xFFFFFFFFL);
+        int mask = pointKey.length-1;
+        int s = (int) ((key*0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (pointRefs[s] >= 0) {
+            if (pointKey[s] == key) {
+                int n = pointRefs[s];
+                pointRefs[s] = n+d;
+                return n;
+            }
+            s = (s+1) & mask;
+        }
+        pointKey[s] = key;
+        pointRefs[s] = d;
+        points++;
+        return 0;
+    }
+
+}
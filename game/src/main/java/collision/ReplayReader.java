@@ -0,0 +1,323 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Plays back a file written by ReplayWriter.
+ *
+ * The file is memory mapped and decoded one tick at a time into reusable
+ * fields, so even millions of ticks never end up on the heap. seek() jumps
+ * to the keyframe at or before the tick and decodes forward from there.
+ *
+ * Usage:
+ *
+ *     ReplayReader r = new ReplayReader(path);
+ *     Simulation sim = new Simulation(r.level());
+ *     sim.setRate(r.rate());
+ *     sim.setRadius(r.radius());
+ *     r.seek(1000);
+ *     while (r.next()) {
+ *         ... r.tick(), r.x(), r.y(), r.events(), r.line(i, k) ...
+ *     }
+ *
+ * To simulate it again instead, apply the events of each tick to the
+ * Simulation before its step: addLine, reset, setGoal, setRate, setRadius
+ * (of radius(i)), or restore(sim) for a restore event, which holds the
+ * whole Checkpoint the game went back to.
+ *
+ * Files are limited to 2 GB, a single mapping.
+ *
+ */
+
+package collision;
+
+import static collision.ReplayWriter.EVENT_GOAL;
+import static collision.ReplayWriter.EVENT_LINE;
+import static collision.ReplayWriter.EVENT_RADIUS;
+import static collision.ReplayWriter.EVENT_RATE;
+import static collision.ReplayWriter.EVENT_RESET;
+import static collision.ReplayWriter.EVENT_RESTORE;
+import static collision.ReplayWriter.FLAG_EVENTS;
+import static collision.ReplayWriter.FLAG_KEYFRAME;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class ReplayReader {
+
+    private final MappedByteBuffer buf;
+    private final int  interval;
+    private final long ticks;
+    private final int  keyframes;
+    private final int  indexOffset;
+    private final int  dataOffset;
+
+    // the simulation when the recording started
+    private final int startRate;
+    private final double startRadius;
+    private final int[] startGoal = new int[4];
+    private final double[] level;  // 4 doubles each
+
+    // Current tick -----------------------------------------------------------
+    // number of the last decoded tick, -1 before the first
+    private long tick = -1;
+
+    // ball state after the step
+    private double x, y, vx, vy;
+
+    // the simulation after the events of the tick
+    private int rate;
+    private double radius;
+    private final int[] goalArea = new int[4];
+
+    // input events before the step, 5 ints each: type and line
+    private int[] events = new int[40];
+    private int eventCount = 0;
+
+    // state of the last restore event, of no level until restore(sim)
+    private final Simulation.Checkpoint restored = new Simulation.Checkpoint();
+
+    // player lines since the last reset, 4 ints each
+    private int[] lines = new int[64];
+    private int lineCount = 0;
+
+
+    public ReplayReader(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw new IOException("replay larger than 2 GB: "+file);
+            }
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+
+        if (buf.getInt() != ReplayWriter.MAGIC) {
+            throw new IOException("not a replay file: "+file);
+        }
+        if (buf.getInt() != ReplayWriter.VERSION) {
+            throw new IOException("unsupported replay version: "+file);
+        }
+        interval = buf.getInt();
+        startRate = rate = buf.getInt();
+        startRadius = radius = buf.getDouble();
+        for (int i = 0; i < 4; i++) startGoal[i] = goalArea[i] = buf.getInt();
+        level = new double[buf.getInt()*4];
+        for (int i = 0; i < level.length; i++) level[i] = buf.getDouble();
+        dataOffset = buf.position();
+
+        int footer = buf.limit()-ReplayWriter.FOOTER_SIZE;
+        ticks       = buf.getLong(footer);
+        keyframes   = buf.getInt(footer+8);
+        indexOffset = (int) buf.getLong(footer+12);
+
+        buf.position(dataOffset);
+    }
+
+
+    // Navigation -------------------------------------------------------------
+    public long ticks() {
+        return ticks;
+    }
+
+    // position so the next call to next() decodes the given tick
+    public void seek(long t) {
+        if (t < 0 || t > ticks) throw new IndexOutOfBoundsException("tick "+t);
+
+        // at the start it is as the header, or there are no keyframes
+        int k = (int) Math.min(t/interval, keyframes-1);
+        if (t == 0 || k < 0) {
+            buf.position(dataOffset);
+            tick = -1;
+            rate = startRate;
+            radius = startRadius;
+            System.arraycopy(startGoal, 0, goalArea, 0, 4);
+            lineCount = 0;
+            return;
+        }
+
+        buf.position((int) buf.getLong(indexOffset+k*8));
+        tick = (long)k*interval-1;
+        while (tick < t-1) next();
+    }
+
+    // decode the next tick, returns false at the end of the replay
+    public boolean next() {
+        if (tick+1 >= ticks) return false;
+        tick++;
+
+        int flags = buf.get();
+        eventCount = 0;
+
+        if ((flags & FLAG_EVENTS) != 0) {
+            int n = (int) readVarint();
+            if (events.length < n*5) events = new int[n*5];
+            for (int e = 0; e < n*5; e += 5) {
+                int type = buf.get();
+                events[e] = type;
+                if (type == EVENT_LINE) {
+                    for (int i = 1; i <= 4; i++) events[e+i] = readZigzag();
+                    addLine(events[e+1], events[e+2], events[e+3], events[e+4]);
+                } else if (type == EVENT_RESET) {
+                    lineCount = 0;
+                } else if (type == EVENT_GOAL) {
+                    for (int i = 1; i <= 4; i++) events[e+i] = goalArea[i-1] = readZigzag();
+                } else if (type == EVENT_RATE) {
+                    rate = events[e+1] = (int) readVarint();
+                } else if (type == EVENT_RADIUS) {
+                    long bits = buf.getLong();
+                    events[e+1] = (int) (bits >>> 32);
+                    events[e+2] = (int) bits;
+                    radius = Double.longBitsToDouble(bits);
+                } else if (type == EVENT_RESTORE) {
+                    readCheckpoint(restored);
+                    rate = restored.rate;
+                    radius = restored.radius;
+                    PlayerLines.State s = restored.drawn;
+                    lineCount = 0;
+                    for (int i = 0; i < s.drawnCount*4; i += 4) {
+                        addLine(s.drawn[i], s.drawn[i+1], s.drawn[i+2], s.drawn[i+3]);
+                    }
+                    events[e+1] = s.drawnCount;
+                }
+            }
+            eventCount = n;
+        }
+
+        if ((flags & FLAG_KEYFRAME) != 0) {
+            x  = buf.getDouble();
+            y  = buf.getDouble();
+            vx = buf.getDouble();
+            vy = buf.getDouble();
+            rate = (int) readVarint();
+            radius = buf.getDouble();
+            for (int i = 0; i < 4; i++) goalArea[i] = readZigzag();
+            // the keyframe holds all lines after this tick's events
+            lineCount = 0;
+            int n = (int) readVarint();
+            for (int i = 0; i < n; i++) {
+                addLine(readZigzag(), readZigzag(), readZigzag(), readZigzag());
+            }
+        } else {
+            x  = xor(x,  readVarint());
+            y  = xor(y,  readVarint());
+            vx = xor(vx, readVarint());
+            vy = xor(vy, readVarint());
+        }
+        return true;
+    }
+
+
+    // Accessors --------------------------------------------------------------
+    // the simulation after the events of the current tick, as it started
+    // before the first
+    public int rate()        { return rate; }
+    public double radius()   { return radius; }
+    public int[] goalArea()  { return goalArea.clone(); }
+
+    // a new world with the level lines
+    public SegmentWorld level() {
+        SegmentWorld w = new SegmentWorld();
+        for (int i = 0; i < level.length; i += 4) {
+            w.add(level[i], level[i+1], level[i+2], level[i+3]);
+        }
+        return w;
+    }
+
+    public long tick()       { return tick; }
+    public double x()        { return x; }
+    public double y()        { return y; }
+    public double vx()       { return vx; }
+    public double vy()       { return vy; }
+
+    public int events()      { return eventCount; }
+    public int eventType(int i) { return events[i*5]; }
+    // k of x1, y1, x2, y2 of a line or goal event, the rate of a rate
+    // event, the line count of a restore
+    public int event(int i, int k) { return events[i*5+1+k]; }
+    // the radius of a radius event
+    public double radius(int i) {
+        return Double.longBitsToDouble(((long) events[i*5+1] << 32) |
+                                       (events[i*5+2] & 0xFFFFFFFFL));
+    }
+
+    // puts sim in the state of the last restore event, sim must play the
+    // level of level() at the rate of the replay up to there
+    public void restore(Simulation sim) {
+        restored.level = sim.worldData;
+        sim.restore(restored);
+    }
+
+    public int lines()       { return lineCount; }
+    // k of x1, y1, x2, y2 of the player line i
+    public int line(int i, int k) { return lines[i*4+k]; }
+
+
+    // Decoding ---------------------------------------------------------------
+    private void readCheckpoint(Simulation.Checkpoint c) {
+        c.rate = (int) readVarint();
+        c.px = buf.getDouble();
+        c.py = buf.getDouble();
+        c.vx = buf.getDouble();
+        c.vy = buf.getDouble();
+        c.radius = buf.getDouble();
+        c.before = buf.getDouble();
+        c.restX = buf.getDouble();
+        c.restY = buf.getDouble();
+        c.steps = (int) readVarint();
+        c.time = (int) readVarint();
+        c.length = (int) readVarint();
+        c.lines = (int) readVarint();
+        c.score = (int) readVarint();
+        c.still = (int) readVarint();
+        int flags = buf.get();
+        c.goal = (flags & 1) != 0;
+        c.asleep = (flags & 2) != 0;
+
+        // new arrays, the simulation shares them
+        int count = (int) readVarint();
+        int[] lines = new int[Math.max(count*4, 64)];
+        int[][] dropped = new int[Math.max(count, 16)][];
+        for (int i = 0; i < count; i++) {
+            for (int k = 0; k < 4; k++) lines[i*4+k] = readZigzag();
+            dropped[i] = new int[(int) readVarint()];
+            for (int j = 0; j < dropped[i].length; j++) dropped[i][j] = readZigzag();
+        }
+        int drawnCount = (int) readVarint();
+        int[] drawn = new int[Math.max(drawnCount*4, 64)];
+        for (int i = 0; i < drawnCount*4; i++) drawn[i] = readZigzag();
+        c.drawn = new PlayerLines.State(lines, dropped, count, drawn, drawnCount);
+    }
+
+    private void addLine(int x1, int y1, int x2, int y2) {
+        if (lineCount*4 == lines.length) lines = Arrays.copyOf(lines, lines.length*2);
+        lines[lineCount*4]   = x1;
+        lines[lineCount*4+1] = y1;
+        lines[lineCount*4+2] = x2;
+        lines[lineCount*4+3] = y2;
+        lineCount++;
+    }
+
+    private static double xor(double prev, long bits) {
+        return Double.longBitsToDouble(Double.doubleToRawLongBits(prev) ^ bits);
+    }
+
+    private int readZigzag() {
+        long v = readVarint();
+        return (int) ((v >>> 1) ^ -(v & 1));
+    }
+
+    private long readVarint() {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            int b = buf.get();
+            v |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+            shift += 7;
+        }
+    }
+
+}
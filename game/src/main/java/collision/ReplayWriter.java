@@ -0,0 +1,326 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Records a run of the game to a compact binary file, see ReplayReader for
+ * playback.
+ *
+ * File layout (big endian):
+ *
+ *   header   int magic, int version, int keyframe interval,
+ *            int steps per second, double ball radius, goal area as 4 ints,
+ *            int level line count, level lines as 4 doubles each
+ *   ticks    one record per step, see below
+ *   index    long offset of every keyframe record
+ *   footer   long tick count, int keyframe count, long index offset
+ *
+ * A tick record starts with a flag byte. If FLAG_EVENTS is set a varint
+ * event count and the events follow: the input that happened before the
+ * step, a line the player drew (4 zigzag varints), a reset, a new goal area
+ * (4 zigzag varints), rate (varint) or ball radius (raw double), or a restore
+ * (to a checkpoint, or a rewind) with all of the Checkpoint it went back to:
+ *
+ *   varint rate, raw doubles x, y, vx, vy, radius, before, restX, restY,
+ *   varints steps, time, length, lines, score, still, a byte of goal (1)
+ *   and asleep (2), varint segment count and per segment 4 zigzag varints
+ *   and the dropped vertices (varint count, zigzag varints), varint drawn
+ *   line count and 4 zigzag varints each.
+ *
+ * so playback can go on simulating from it. A restore replaces all state,
+ * so it is the first event of its tick. Then the ball state after the
+ * step, {x, y, vx, vy}:
+ *
+ *   keyframe  (every interval ticks) the raw doubles, the rate, radius and
+ *             goal area as in the header, and the player lines since the
+ *             last reset, so playback can start there.
+ *   otherwise each double xor'ed with the one of the previous tick, as an
+ *             unsigned varint. A ball at rest costs one byte per value.
+ *
+ * The header holds the simulation as it was when the recording started,
+ * enough to play it back in a new Simulation. A new level is not recorded:
+ * Simulation.setLevel ends the recording.
+ *
+ */
+
+package collision;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class ReplayWriter implements AutoCloseable {
+
+    static final int MAGIC   = 0x43445250; // "CDRP"
+    static final int VERSION = 5;
+
+    static final int FLAG_KEYFRAME = 1;
+    static final int FLAG_EVENTS   = 2;
+
+    static final int EVENT_LINE  = 1;
+    static final int EVENT_RESET = 2;
+    static final int EVENT_RESTORE = 3;
+    static final int EVENT_GOAL  = 4;
+    static final int EVENT_RATE  = 5;
+    static final int EVENT_RADIUS = 6;
+
+    static final int FOOTER_SIZE = 8+4+8;
+
+    private final DataOutputStream out;
+    private final int interval;
+    private long offset = 0;
+    private long ticks  = 0;
+
+    // keyframe offsets
+    private long[] index = new long[64];
+    private int keyframes = 0;
+
+    // events since the last tick, 5 ints each: type and line, goal area,
+    // rate, or the high and low bits of the radius
+    private int[] events = new int[40];
+    private int eventCount = 0;
+
+    // player lines since the last reset, for keyframes
+    private int[] lines = new int[64];
+    private int lineCount = 0;
+
+    // state of the restore event of this tick
+    private final Simulation.Checkpoint restored = new Simulation.Checkpoint();
+
+    // state of the previous tick, as bits
+    private final long[] prev = new long[4];
+
+    // the simulation as it is now, for keyframes
+    private int rate;
+    private double radius;
+    private final int[] goalArea = new int[4];
+
+
+    // the level, rate, radius and goal are taken from sim as they are now
+    public ReplayWriter(Path file, int keyframeInterval, Simulation sim)
+            throws IOException {
+        this(Files.newOutputStream(file), keyframeInterval, sim);
+    }
+
+    public ReplayWriter(OutputStream os, int keyframeInterval,
+                        Simulation sim) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+        interval = keyframeInterval;
+
+        writeInt(MAGIC);
+        writeInt(VERSION);
+        writeInt(interval);
+        rate = sim.rate;
+        radius = sim.radius;
+        System.arraycopy(sim.goalArea, 0, goalArea, 0, 4);
+        writeInt(rate);
+        writeDouble(radius);
+        for (int g : goalArea) writeInt(g);
+        SegmentWorld level = sim.worldData;
+        writeInt(level.size());
+        for (int i = 0; i < level.size(); i++) {
+            writeDouble(level.x1(i));
+            writeDouble(level.y1(i));
+            writeDouble(level.x2(i));
+            writeDouble(level.y2(i));
+        }
+    }
+
+
+    // Input events -----------------------------------------------------------
+    public void line(int x1, int y1, int x2, int y2) {
+        event(EVENT_LINE, x1, y1, x2, y2);
+        if (lineCount*4 == lines.length) lines = Arrays.copyOf(lines, lines.length*2);
+        lines[lineCount*4]   = x1;
+        lines[lineCount*4+1] = y1;
+        lines[lineCount*4+2] = x2;
+        lines[lineCount*4+3] = y2;
+        lineCount++;
+    }
+
+    public void reset() {
+        event(EVENT_RESET, 0, 0, 0, 0);
+        lineCount = 0;
+    }
+
+    // the game went back to the state of c. Events before it in this tick
+    // no longer matter.
+    public void restore(Simulation.Checkpoint c) {
+        int n = c.drawn.drawnCount;
+        eventCount = 0;
+        event(EVENT_RESTORE, n, 0, 0, 0);
+        restored.set(c);
+        rate = c.rate;
+        radius = c.radius;
+        if (lines.length < n*4) lines = new int[n*4];
+        System.arraycopy(c.drawn.drawn, 0, lines, 0, n*4);
+        lineCount = n;
+    }
+
+    public void goal(int x1, int y1, int x2, int y2) {
+        event(EVENT_GOAL, x1, y1, x2, y2);
+        goalArea[0] = x1;
+        goalArea[1] = y1;
+        goalArea[2] = x2;
+        goalArea[3] = y2;
+    }
+
+    public void rate(int stepsPerSecond) {
+        event(EVENT_RATE, stepsPerSecond, 0, 0, 0);
+        rate = stepsPerSecond;
+    }
+
+    public void radius(double r) {
+        long bits = Double.doubleToRawLongBits(r);
+        event(EVENT_RADIUS, (int) (bits >>> 32), (int) bits, 0, 0);
+        radius = r;
+    }
+
+    private void event(int type, int x1, int y1, int x2, int y2) {
+        if (eventCount*5 == events.length) events = Arrays.copyOf(events, events.length*2);
+        int e = eventCount*5;
+        events[e]   = type;
+        events[e+1] = x1;
+        events[e+2] = y1;
+        events[e+3] = x2;
+        events[e+4] = y2;
+        eventCount++;
+    }
+
+
+    // Tick -------------------------------------------------------------------
+    // call after each step with the new state of the ball.
+    public void tick(double x, double y, double vx, double vy)
+            throws IOException {
+
+        boolean key = ticks % interval == 0;
+        if (key) {
+            if (keyframes == index.length) index = Arrays.copyOf(index, keyframes*2);
+            index[keyframes++] = offset;
+        }
+
+        writeByte((key ? FLAG_KEYFRAME : 0) | (eventCount > 0 ? FLAG_EVENTS : 0));
+
+        if (eventCount > 0) {
+            writeVarint(eventCount);
+            for (int e = 0; e < eventCount*5; e += 5) {
+                writeByte(events[e]);
+                if (events[e] == EVENT_LINE || events[e] == EVENT_GOAL) {
+                    for (int i = 1; i <= 4; i++) writeVarint(zigzag(events[e+i]));
+                } else if (events[e] == EVENT_RATE) {
+                    writeVarint(events[e+1]);
+                } else if (events[e] == EVENT_RADIUS) {
+                    writeLong(((long) events[e+1] << 32) | (events[e+2] & 0xFFFFFFFFL));
+                } else if (events[e] == EVENT_RESTORE) {
+                    writeCheckpoint(restored);
+                }
+            }
+            eventCount = 0;
+        }
+
+        long bx  = Double.doubleToRawLongBits(x);
+        long by  = Double.doubleToRawLongBits(y);
+        long bvx = Double.doubleToRawLongBits(vx);
+        long bvy = Double.doubleToRawLongBits(vy);
+
+        if (key) {
+            writeLong(bx);
+            writeLong(by);
+            writeLong(bvx);
+            writeLong(bvy);
+            writeVarint(rate);
+            writeDouble(radius);
+            for (int g : goalArea) writeVarint(zigzag(g));
+            writeVarint(lineCount);
+            for (int i = 0; i < lineCount*4; i++) writeVarint(zigzag(lines[i]));
+        } else {
+            writeVarint(bx  ^ prev[0]);
+            writeVarint(by  ^ prev[1]);
+            writeVarint(bvx ^ prev[2]);
+            writeVarint(bvy ^ prev[3]);
+        }
+
+        prev[0] = bx;
+        prev[1] = by;
+        prev[2] = bvx;
+        prev[3] = bvy;
+        ticks++;
+    }
+
+    // writes the keyframe index and footer
+    public void close() throws IOException {
+        long indexOffset = offset;
+        for (int i = 0; i < keyframes; i++) writeLong(index[i]);
+        writeLong(ticks);
+        writeInt(keyframes);
+        writeLong(indexOffset);
+        out.close();
+    }
+
+
+    // Encoding ---------------------------------------------------------------
+    private void writeCheckpoint(Simulation.Checkpoint c) throws IOException {
+        writeVarint(c.rate);
+        writeDouble(c.px);
+        writeDouble(c.py);
+        writeDouble(c.vx);
+        writeDouble(c.vy);
+        writeDouble(c.radius);
+        writeDouble(c.before);
+        writeDouble(c.restX);
+        writeDouble(c.restY);
+        writeVarint(c.steps);
+        writeVarint(c.time);
+        writeVarint(c.length);
+        writeVarint(c.lines);
+        writeVarint(c.score);
+        writeVarint(c.still);
+        writeByte((c.goal ? 1 : 0) | (c.asleep ? 2 : 0));
+
+        PlayerLines.State s = c.drawn;
+        writeVarint(s.count);
+        for (int i = 0; i < s.count; i++) {
+            for (int k = 0; k < 4; k++) writeVarint(zigzag(s.lines[i*4+k]));
+            writeVarint(s.dropped[i].length);
+            for (int d : s.dropped[i]) writeVarint(zigzag(d));
+        }
+        writeVarint(s.drawnCount);
+        for (int i = 0; i < s.drawnCount*4; i++) writeVarint(zigzag(s.drawn[i]));
+    }
+
+    static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private void writeVarint(long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            writeByte((int)((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        writeByte((int) v);
+    }
+
+    private void writeByte(int b) throws IOException {
+        out.write(b);
+        offset++;
+    }
+
+    private void writeInt(int v) throws IOException {
+        out.writeInt(v);
+        offset += 4;
+    }
+
+    private void writeLong(long v) throws IOException {
+        out.writeLong(v);
+        offset += 8;
+    }
+
+    private void writeDouble(double v) throws IOException {
+        writeLong(Double.doubleToRawLongBits(v));
+    }
+
+}
@@ -0,0 +1,238 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Spatial queries against the segments of a SegmentWorld, answered through
+ * its spatial hash:
+ *
+ *   raycast   the first segment hit by a ray, walking the grid cell by cell
+ *             from where it enters the cells that hold segments, and
+ *             stopping at the first cell that can not hold a nearer hit or
+ *             where it leaves them
+ *   overlap   all segments within a radius of a point
+ *   crossing  all segments crossed or touched by a segment
+ *
+ * Segments are thin lines here, not grown by the radius of a ball. Results
+ * go to the public fields and buffers of the query object, which are reused
+ * by the next query, so nothing is allocated once they have grown.
+ *
+ * Usage:
+ *
+ *     SceneQuery q = new SceneQuery();
+ *     if (q.raycast(world, x, y, dx, dy, 1) != -1) ... q.hitX, q.hitY ...
+ *     int n = q.overlap(world, x, y, 50);
+ *     for (int i = 0; i < n; i++) ... q.ids[i] ...
+ *
+ * Like ContactBuffer, a SceneQuery must not be shared between threads.
+ *
+ */
+
+package collision;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+import java.util.Arrays;
+
+public class SceneQuery {
+
+    // segment ids found by overlap and crossing
+    public int[] ids = new int[16];
+    public int count = 0;
+
+    // first hit of the last raycast, hit is -1 if there was none
+    public int hit = -1;
+    public double hitT, hitX, hitY;
+    public double hitNx, hitNy;   // unit normal, facing the ray origin
+
+    private final HashQuery query = new HashQuery();
+
+
+    // Raycast ----------------------------------------------------------------
+    // first segment hit by (ox,oy)+t*(dx,dy) for 0 <= t <= maxT, or -1.
+    // maxT may be infinite.
+    public int raycast(SegmentWorld w, double ox, double oy,
+                       double dx, double dy, double maxT) {
+        SpatialHash index = w.index;
+        HashQuery q = query;
+        q.next();
+
+        hit = -1;
+        hitT = maxT;
+        if (index.minX > index.maxX) return -1;
+
+        // clip the ray to the box of the cells that hold segments
+        double cs = index.cellSize;
+        double t0 = 0;
+        double t1 = (dx == 0 && dy == 0) ? min(maxT, 0) : maxT;
+        if (dx != 0) {
+            double a = (index.minX*cs-ox)/dx;
+            double b = ((index.maxX+1)*cs-ox)/dx;
+            t0 = max(t0, min(a, b));
+            t1 = min(t1, max(a, b));
+        } else if (ox < index.minX*cs || ox >= (index.maxX+1)*cs) {
+            return -1;
+        }
+        if (dy != 0) {
+            double a = (index.minY*cs-oy)/dy;
+            double b = ((index.maxY+1)*cs-oy)/dy;
+            t0 = max(t0, min(a, b));
+            t1 = min(t1, max(a, b));
+        } else if (oy < index.minY*cs || oy >= (index.maxY+1)*cs) {
+            return -1;
+        }
+        // also a ray of NaN or too far out to step through the cells
+        if (!(t0 <= t1)) return -1;
+
+        int cx = max(index.minX, min(index.maxX, index.cell(ox+t0*dx)));
+        int cy = max(index.minY, min(index.maxY, index.cell(oy+t0*dy)));
+        int sx = (dx > 0) ? 1 : -1;
+        int sy = (dy > 0) ? 1 : -1;
+
+        // ray parameter at the next vertical / horizontal cell border, and
+        // between two of them
+        double tx = (dx == 0) ? Double.POSITIVE_INFINITY
+                              : ((cx+(dx > 0 ? 1 : 0))*cs-ox)/dx;
+        double ty = (dy == 0) ? Double.POSITIVE_INFINITY
+                              : ((cy+(dy > 0 ? 1 : 0))*cs-oy)/dy;
+        double tdx = (dx == 0) ? Double.POSITIVE_INFINITY : cs/abs(dx);
+        double tdy = (dy == 0) ? Double.POSITIVE_INFINITY : cs/abs(dy);
+
+        int n = 0;
+        while (true) {
+            int first = n;
+            n = index.queryCell(cx, cy, n, q);
+            int[] hits = q.hits();
+            for (int i = first; i < n; i++) rayHit(w, hits[i], ox, oy, dx, dy);
+
+            // anything hit before leaving this cell is in a visited cell
+            double exit = min(tx, ty);
+            if (hitT <= exit || exit > t1) break;
+
+            if (tx < ty) { cx += sx; tx += tdx; }
+            else         { cy += sy; ty += tdy; }
+            if (cx < index.minX || cx > index.maxX ||
+                cy < index.minY || cy > index.maxY) break;
+        }
+
+        if (hit != -1) {
+            hitX = ox+hitT*dx;
+            hitY = oy+hitT*dy;
+        }
+        return hit;
+    }
+
+    // keeps segment s as the hit if the ray crosses it before the best so far
+    private void rayHit(SegmentWorld w, int s, double ox, double oy,
+                        double dx, double dy) {
+        double ex = w.x2[s]-w.x1[s];
+        double ey = w.y2[s]-w.y1[s];
+        double d  = dx*ey-dy*ex;
+
+        // parallel, including a ray running along the segment
+        if (d == 0) return;
+
+        double px = w.x1[s]-ox;
+        double py = w.y1[s]-oy;
+        double t  = (px*ey-py*ex)/d;
+        double u  = (px*dy-py*dx)/d;
+
+        if (t < 0 || t > hitT || u < 0 || u > 1) return;
+        if (t == hitT && hit != -1 && s > hit) return; // ties to lowest id
+
+        double l = sqrt(ex*ex+ey*ey);
+        double nx = -ey/l;
+        double ny =  ex/l;
+        if (nx*dx+ny*dy > 0) { nx = -nx; ny = -ny; }
+
+        hit = s;
+        hitT = t;
+        hitNx = nx;
+        hitNy = ny;
+    }
+
+
+    // Overlap ----------------------------------------------------------------
+    // segments with a point within r of (x,y), returns the count.
+    public int overlap(SegmentWorld w, double x, double y, double r) {
+        int n = w.index.query(x-r, y-r, x+r, y+r, query);
+        int[] hits = query.hits();
+        count = 0;
+        for (int i = 0; i < n; i++) {
+            int s = hits[i];
+            if (distance2(w, s, x, y) <= r*r) add(s);
+        }
+        return count;
+    }
+
+    // squared distance from (x,y) to segment s
+    private static double distance2(SegmentWorld w, int s, double x, double y) {
+        double x1 = w.x1[s], y1 = w.y1[s];
+        double ex = w.x2[s]-x1;
+        double ey = w.y2[s]-y1;
+        double l2 = ex*ex+ey*ey;
+        double t  = (l2 == 0) ? 0 : ((x-x1)*ex+(y-y1)*ey)/l2;
+        t = max(0, min(1, t));
+        double px = x1+t*ex-x;
+        double py = y1+t*ey-y;
+        return px*px+py*py;
+    }
+
+
+    // Crossing ---------------------------------------------------------------
+    // segments crossed or touched by (x1,y1)-(x2,y2), returns the count.
+    public int crossing(SegmentWorld w, double x1, double y1,
+                        double x2, double y2) {
+        int n = w.index.query(min(x1,x2), min(y1,y2),
+                              max(x1,x2), max(y1,y2), query);
+        int[] hits = query.hits();
+        count = 0;
+        for (int i = 0; i < n; i++) {
+            int s = hits[i];
+            if (crosses(x1, y1, x2, y2, w.x1[s], w.y1[s], w.x2[s], w.y2[s])) {
+                add(s);
+            }
+        }
+        return count;
+    }
+
+    // orientation test, touching and overlapping collinear segments count
+    static boolean crosses(double ax, double ay, double bx, double by,
+                           double cx, double cy, double dx, double dy) {
+        double d1 = orient(cx, cy, dx, dy, ax, ay);
+        double d2 = orient(cx, cy, dx, dy, bx, by);
+        double d3 = orient(ax, ay, bx, by, cx, cy);
+        double d4 = orient(ax, ay, bx, by, dx, dy);
+
+        if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) &&
+            ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) return true;
+
+        return (d1 == 0 && onSegment(cx, cy, dx, dy, ax, ay))
+            || (d2 == 0 && onSegment(cx, cy, dx, dy, bx, by))
+            || (d3 == 0 && onSegment(ax, ay, bx, by, cx, cy))
+            || (d4 == 0 && onSegment(ax, ay, bx, by, dx, dy));
+    }
+
+    private static double orient(double ax, double ay, double bx, double by,
+                                 double px, double py) {
+        return (bx-ax)*(py-ay)-(by-ay)*(px-ax);
+    }
+
+    // p is collinear with a-b, is it within its bounds
+    private static boolean onSegment(double ax, double ay, double bx, double by,
+                                     double px, double py) {
+        return px >= min(ax,bx) && px <= max(ax,bx)
+            && py >= min(ay,by) && py <= max(ay,by);
+    }
+
+
+    // Helper functions -------------------------------------------------------
+    private void add(int s) {
+        if (count == ids.length) ids = Arrays.copyOf(ids, count*2);
+        ids[count++] = s;
+    }
+
+}
@@ -0,0 +1,311 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Highscores, kept as an append-only log on disk and the best TOP scores of
+ * each level in memory.
+ *
+ * submit() only updates the memory and queues the record, a background
+ * writer appends the queued records and forces them to disk, one fsync for
+ * everything that was queued while it wrote the last batch. So the game
+ * thread never waits for the disk.
+ *
+ * File layout (big endian):
+ *
+ *   header   int magic, int version
+ *   records  int level, int score, int time (ms), long date (epoch ms),
+ *            int crc32 of the 20 bytes before it
+ *
+ * A write that is cut short leaves at most a torn record at the end, which
+ * fails its checksum. Loading stops at the first bad record and keeps what
+ * came before, then compacts the log: the kept records are written to a
+ * temporary file, forced, and moved over the log in one atomic rename, and
+ * the directory is forced too, so the rename is on disk as well. The log is
+ * whole whenever the game or the machine is stopped.
+ *
+ * The old highscores.ser of the game is imported once, if there is no log.
+ *
+ */
+
+package collision;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+public class ScoreStore implements AutoCloseable {
+
+    static final int MAGIC   = 0x43444853; // "CDHS"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 4+4;
+    static final int RECORD_SIZE = 4+4+4+8+4;
+
+    // scores kept per level
+    public static final int TOP = 10;
+
+    public static class Entry {
+        public final int level;
+        public final int score;
+        public final int time;
+        public final long date;
+
+        Entry(int level, int score, int time, long date) {
+            this.level = level;
+            this.score = score;
+            this.time = time;
+            this.date = date;
+        }
+    }
+
+    private final Path file;
+
+    // best first, by level-1
+    private Entry[][] top = new Entry[4][0];
+
+    // Writer -----------------------------------------------------------------
+    private static final Entry STOP = new Entry(0, 0, 0, 0);
+
+    private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final FileChannel channel;
+    private final Thread writer;
+    private volatile IOException failure;
+
+
+    // loads and compacts the log, and starts the writer
+    public ScoreStore(Path file) throws IOException {
+        this.file = file;
+
+        Path legacy = file.resolveSibling("highscores.ser");
+        if (Files.exists(file)) load();
+        else if (Files.exists(legacy)) importLegacy(legacy);
+        compact();
+
+        channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                                         StandardOpenOption.APPEND);
+        writer = new Thread(this::write, "ScoreStore writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    // Scores -----------------------------------------------------------------
+    // levels count from 1, one without scores has a best of 0 and no top
+
+    // adds a finished run, returns true if it is a new best of its level
+    public synchronized boolean submit(int level, int score, int time) {
+        checkLevel(level);
+        Entry e = new Entry(level, score, time, System.currentTimeMillis());
+        boolean best = score > best(level);
+        if (insert(e)) queue.add(e);
+        return best;
+    }
+
+    public synchronized int best(int level) {
+        checkLevel(level);
+        if (level > top.length || top[level-1].length == 0) return 0;
+        return top[level-1][0].score;
+    }
+
+    // best first
+    public synchronized List<Entry> top(int level) {
+        checkLevel(level);
+        if (level > top.length) return List.of();
+        return List.of(top[level-1]);
+    }
+
+    // the last error of the writer, or null. Records that failed to write
+    // are still in memory until the game is closed.
+    public IOException failure() {
+        return failure;
+    }
+
+    private static void checkLevel(int level) {
+        if (level < 1) {
+            throw new IllegalArgumentException("level "+level+", levels count from 1");
+        }
+    }
+
+    // returns false if the entry is not among the best TOP of its level
+    private boolean insert(Entry e) {
+        if (e.level > top.length) {
+            int n = top.length;
+            top = Arrays.copyOf(top, Math.max(e.level, n*2));
+            for (int i = n; i < top.length; i++) top[i] = new Entry[0];
+        }
+        Entry[] t = top[e.level-1];
+        int i = t.length;
+        while (i > 0 && t[i-1].score < e.score) i--;
+        if (i == TOP) return false;
+
+        Entry[] n = new Entry[Math.min(t.length+1, TOP)];
+        System.arraycopy(t, 0, n, 0, i);
+        n[i] = e;
+        System.arraycopy(t, i, n, i+1, n.length-i-1);
+        top[e.level-1] = n;
+        return true;
+    }
+
+
+    // Writer thread ----------------------------------------------------------
+    private void write() {
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE*64);
+        List<Entry> batch = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        boolean stop = false;
+
+        while (!stop) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch);
+
+            long end = -1;
+            try {
+                end = channel.size();
+                for (Entry e : batch) {
+                    if (e == STOP) {
+                        stop = true;
+                        continue;
+                    }
+                    if (buf.remaining() < RECORD_SIZE) flush(buf);
+                    putRecord(buf, e, crc);
+                }
+                flush(buf);
+                channel.force(false);
+            } catch (IOException e) {
+                // cut off a torn record, so the ones after it can be read
+                failure = e;
+                buf.clear();
+                try {
+                    if (end >= 0) channel.truncate(end);
+                } catch (IOException again) {}
+            }
+            batch.clear();
+        }
+    }
+
+    private void flush(ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+
+    // writes what is queued and stops the writer
+    public void close() throws IOException {
+        queue.add(STOP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) throw failure;
+    }
+
+
+    // Load -------------------------------------------------------------------
+    private void load() throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        if (data.length < HEADER_SIZE || buf.getInt() != MAGIC) {
+            throw new IOException("not a highscore log: "+file);
+        }
+        if (buf.getInt() != VERSION) {
+            throw new IOException("unsupported highscore log version: "+file);
+        }
+
+        CRC32 crc = new CRC32();
+        while (buf.remaining() >= RECORD_SIZE) {
+            int at = buf.position();
+            crc.reset();
+            crc.update(data, at, RECORD_SIZE-4);
+
+            int level = buf.getInt();
+            int score = buf.getInt();
+            int time  = buf.getInt();
+            long date = buf.getLong();
+            if (buf.getInt() != (int) crc.getValue() || level < 1) break;
+            insert(new Entry(level, score, time, date));
+        }
+    }
+
+    // the int[] of the best score by level-1, written by older versions
+    private void importLegacy(Path legacy) {
+        try (InputStream f = Files.newInputStream(legacy);
+             ObjectInputStream in = new ObjectInputStream(f)) {
+            int[] scores = (int[]) in.readObject();
+            long date = Files.getLastModifiedTime(legacy).toMillis();
+            for (int i = 0; i < scores.length; i++) {
+                if (scores[i] > 0) insert(new Entry(i+1, scores[i], 0, date));
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // nothing worth keeping
+        }
+    }
+
+    // rewrites the log with only the kept records
+    private void compact() throws IOException {
+        int n = 0;
+        for (Entry[] t : top) n += t.length;
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE+n*RECORD_SIZE);
+        buf.putInt(MAGIC);
+        buf.putInt(VERSION);
+        CRC32 crc = new CRC32();
+        for (Entry[] t : top) {
+            for (Entry e : t) putRecord(buf, e, crc);
+        }
+        buf.flip();
+
+        Path tmp = file.resolveSibling(file.getFileName()+".tmp");
+        try (FileChannel ch = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                              StandardCopyOption.ATOMIC_MOVE);
+
+        // the rename is in the directory. Some platforms (Windows) can not
+        // open one, there the move is all there is.
+        FileChannel dir;
+        try {
+            dir = FileChannel.open(file.toAbsolutePath().getParent(),
+                                   StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (dir) {
+            dir.force(true);
+        }
+    }
+
+
+    // Encoding ---------------------------------------------------------------
+    private static void putRecord(ByteBuffer buf, Entry e, CRC32 crc) {
+        int at = buf.position();
+        buf.putInt(e.level);
+        buf.putInt(e.score);
+        buf.putInt(e.time);
+        buf.putLong(e.date);
+        crc.reset();
+        crc.update(buf.array(), at, RECORD_SIZE-4);
+        buf.putInt((int) crc.getValue());
+    }
+
+}
@@ -0,0 +1,164 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Checks submitted scores by playing the submitted solutions again.
+ *
+ * A submission is a level, the lines the player drew with the tick each was
+ * drawn before, and the score claimed for it. Each run gets its own
+ * Simulation, driven exactly like GameWorld drives it: lines are added
+ * before the step of their tick, and a line drawn on the ball resets the
+ * level. The run ends at the goal or after maxTicks steps. The collision
+ * detection runs without a time budget, so every run gives the same score.
+ *
+ * Runs are independent, so a batch is spread over a work stealing
+ * ForkJoinPool. Results are handed to a consumer as each run finishes (on
+ * the worker threads, in no particular order), and verify returns the
+ * totals and throughput of the batch.
+ *
+ * Usage:
+ *
+ *     ScoreVerifier v = new ScoreVerifier(8, 24000);
+ *     ScoreVerifier.Summary s = v.verify(submissions, r -> {
+ *         if (!r.valid) ... r.id, r.score, r.claimed ...
+ *     });
+ *
+ */
+
+package collision;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class ScoreVerifier {
+
+    private final ForkJoinPool pool;
+    private final int maxTicks;
+
+
+    public ScoreVerifier(int parallelism, int maxTicks) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.maxTicks = maxTicks;
+    }
+
+    public ScoreVerifier(int maxTicks) {
+        this(Runtime.getRuntime().availableProcessors(), maxTicks);
+    }
+
+
+    // Data -------------------------------------------------------------------
+    public static class Submission {
+        final long id;
+        final SegmentWorld level;   // only read, may be shared
+        final int[] lines;          // tick, x1, y1, x2, y2; by tick
+        final int claimed;
+
+        public Submission(long id, SegmentWorld level, int[] lines,
+                          int claimed) {
+            this.id = id;
+            this.level = level;
+            this.lines = lines;
+            this.claimed = claimed;
+        }
+    }
+
+    public static class Result {
+        public final long id;
+        public final int score;
+        public final int claimed;
+        public final int ticks;
+        public final boolean goal;
+        public final boolean valid;
+
+        Result(long id, int score, int claimed, int ticks, boolean goal) {
+            this.id = id;
+            this.score = score;
+            this.claimed = claimed;
+            this.ticks = ticks;
+            this.goal = goal;
+            this.valid = goal && score == claimed;
+        }
+    }
+
+    public static class Summary {
+        public final int runs;
+        public final int valid;
+        public final long ticks;
+        public final long nanos;
+
+        Summary(int runs, int valid, long ticks, long nanos) {
+            this.runs = runs;
+            this.valid = valid;
+            this.ticks = ticks;
+            this.nanos = nanos;
+        }
+
+        public double runsPerSecond() {
+            return runs*1e9/Math.max(nanos, 1);
+        }
+
+        public double ticksPerSecond() {
+            return ticks*1e9/Math.max(nanos, 1);
+        }
+    }
+
+
+    // Batch ------------------------------------------------------------------
+    // runs all submissions, out must be thread safe.
+    public Summary verify(List<Submission> submissions, Consumer<Result> out) {
+        AtomicInteger valid = new AtomicInteger();
+        long[] ticks = new long[submissions.size()];
+
+        long start = System.nanoTime();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(submissions.size());
+        for (int i = 0; i < submissions.size(); i++) {
+            Submission s = submissions.get(i);
+            int k = i;
+            tasks.add(pool.submit(() -> {
+                Result r = run(s, maxTicks);
+                ticks[k] = r.ticks;
+                if (r.valid) valid.incrementAndGet();
+                out.accept(r);
+            }));
+        }
+        for (ForkJoinTask<?> t : tasks) t.join();
+        long nanos = System.nanoTime()-start;
+
+        long total = 0;
+        for (long t : ticks) total += t;
+        return new Summary(submissions.size(), valid.get(), total, nanos);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+
+    // Single run -------------------------------------------------------------
+    public static Result run(Submission s, int maxTicks) {
+        Simulation sim = new Simulation(s.level);
+        // no time budget, a score must not depend on the machine it ran on
+        sim.contacts.maxNanos = 0;
+
+        int[] l = s.lines;
+        int next = 0;
+        int tick = 0;
+        while (tick < maxTicks && !sim.goal) {
+            // the input of this tick, as GameWorld gets it between steps
+            for (; next < l.length && l[next] <= tick; next += 5) {
+                if (!sim.addLine(l[next+1], l[next+2], l[next+3], l[next+4])) {
+                    sim.reset();
+                }
+            }
+            sim.step();
+            tick++;
+        }
+        return new Result(s.id, sim.score, s.claimed, tick, sim.goal);
+    }
+
+}
@@ -0,0 +1,309 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * A list of line segments stored as flat primitive arrays (one array per
+ * coordinate), with a spatial hash over them.
+ *
+ * For each segment the unit direction is precomputed, and per radius the
+ * two lines tangent to the endpoint circles, the sides of the "capsule" the
+ * collision detection tests the movement vector against (Offsets). So the
+ * collision detection does no trigonometry and reads contiguous memory.
+ *
+ * The tangents are computed when a radius is first queried, and for the
+ * segments added since on its next query, so balls of any number of sizes
+ * share one world. Up to RADII radii are cached. A new radius replaces one
+ * that went out of use: the clock hand moves one radius per miss, and takes
+ * the first one that was not queried while it passed IDLE times. While more
+ * radii than that are in use, the ones not cached compute the tangents of
+ * the segments they test, as all did before the cache.
+ *
+ * A query that hits the cache only reads. A miss while the cache is full
+ * only moves the clock hand, without a lock, so the balls of radii that are
+ * not cached do not wait on each other. Filling the cache and replacing a
+ * radius is done under the lock of the world. So concurrent queries of a
+ * world that is not changed are safe.
+ *
+ * Segments that share an endpoint share its circle too, a segment may be
+ * added with SHARED1 or SHARED2 set to leave that circle to another one.
+ *
+ */
+
+package collision;
+
+import static java.lang.Math.sqrt;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SegmentWorld {
+
+    int count = 0;
+
+    // endpoints
+    double[] x1 = new double[64];
+    double[] y1 = new double[64];
+    double[] x2 = new double[64];
+    double[] y2 = new double[64];
+
+    // unit direction, pointing towards positive x (or positive y if
+    // vertical), (0,0) for a segment that is a point.
+    double[] ux = new double[64];
+    double[] uy = new double[64];
+
+    // tangent lines by radius, and the clock hand of their eviction
+    static final int RADII = 8;     // radii kept
+    static final int IDLE  = 16;    // passes of the hand a radius may be unused
+    private volatile Offsets[] offsets = {};
+    private final AtomicInteger hand = new AtomicInteger();
+
+    // endpoint circles tested by another segment
+    static final int SHARED1 = 1;
+    static final int SHARED2 = 2;
+    byte[] shared = new byte[64];
+
+    final SpatialHash index;
+
+
+    public SegmentWorld() {
+        this(new SpatialHash());
+    }
+
+    public SegmentWorld(SpatialHash index) {
+        this.index = index;
+    }
+
+    // a world from its raw arrays, as stored by LevelFile. The arrays are
+    // used as they are, and must hold at least count segments.
+    SegmentWorld(int count, double[] x1, double[] y1, double[] x2, double[] y2,
+                 double[] ux, double[] uy, SpatialHash index) {
+        this.count = count;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
+        this.ux = ux;
+        this.uy = uy;
+        this.index = index;
+        shared = new byte[x1.length];
+    }
+
+
+    // Add / Clear ------------------------------------------------------------
+    // returns the id of the new segment
+    public int add(double sx1, double sy1, double sx2, double sy2) {
+        return add(sx1, sy1, sx2, sy2, 0);
+    }
+
+    // flags: SHARED1 and SHARED2, or 0
+    public int add(double sx1, double sy1, double sx2, double sy2, int flags) {
+        if (count == x1.length) grow(Math.max(64, count*2));
+        int i = count++;
+
+        shared[i] = (byte) flags;
+        x1[i] = sx1;
+        y1[i] = sy1;
+        x2[i] = sx2;
+        y2[i] = sy2;
+
+        double dx = sx2-sx1;
+        double dy = sy2-sy1;
+        double l  = sqrt(dx*dx+dy*dy);
+        if (l == 0) {
+            ux[i] = uy[i] = 0;
+        } else if (dx == 0) {
+            ux[i] = 0;
+            uy[i] = 1;
+        } else {
+            double s = (dx < 0) ? -1 : 1;
+            ux[i] = s*dx/l;
+            uy[i] = s*dy/l;
+        }
+
+        index.insert(i, sx1, sy1, sx2, sy2);
+        return i;
+    }
+
+    public int add(int[] l) {
+        return add(l[0], l[1], l[2], l[3]);
+    }
+
+    public void addAll(SegmentWorld w) {
+        for (int i = 0; i < w.count; i++) {
+            add(w.x1[i], w.y1[i], w.x2[i], w.y2[i], w.shared[i]);
+        }
+    }
+
+    public void clear() {
+        count = 0;
+        for (Offsets o : offsets) o.valid = 0;
+        index.clear();
+    }
+
+    // removes the segments from id n on, keeps the storage
+    public void truncate(int n) {
+        if (n >= count) return;
+        count = n;
+        for (Offsets o : offsets) o.valid = Math.min(o.valid, n);
+        index.truncate(n);
+    }
+
+    // make this a copy of src, index included. Copies arrays instead of
+    // adding segment by segment, so it costs no more than a memcpy for
+    // large levels. Keeps the radii this world has tangents for.
+    public void set(SegmentWorld src) {
+        if (x1.length < src.count) grow(src.count);
+        count = src.count;
+        System.arraycopy(src.x1, 0, x1, 0, count);
+        System.arraycopy(src.y1, 0, y1, 0, count);
+        System.arraycopy(src.x2, 0, x2, 0, count);
+        System.arraycopy(src.y2, 0, y2, 0, count);
+        System.arraycopy(src.ux, 0, ux, 0, count);
+        System.arraycopy(src.uy, 0, uy, 0, count);
+        System.arraycopy(src.shared, 0, shared, 0, count);
+
+        for (Offsets o : offsets) {
+            o.valid = 0;
+            for (Offsets so : src.offsets) {
+                if (so.radius == o.radius) o.copy(so, Math.min(so.valid, count));
+            }
+        }
+
+        index.set(src.index);
+    }
+
+
+    // Capsule geometry -------------------------------------------------------
+    // the two tangent lines of every segment for one radius, a is offset
+    // along the normal (-uy,ux) and b along the opposite direction. Valid for
+    // the segments below valid.
+    static final class Offsets {
+        final double radius;
+        double[] ax1, ay1, ax2, ay2, bx1, by1, bx2, by2;
+        volatile int valid = 0;
+        int idle = 0;  // times the clock hand passed it since it was used
+
+        Offsets(double radius, int n) {
+            this.radius = radius;
+            ax1 = new double[n];  ay1 = new double[n];
+            ax2 = new double[n];  ay2 = new double[n];
+            bx1 = new double[n];  by1 = new double[n];
+            bx2 = new double[n];  by2 = new double[n];
+        }
+
+        void copy(Offsets src, int n) {
+            if (ax1.length < n) grow(n);
+            System.arraycopy(src.ax1, 0, ax1, 0, n);
+            System.arraycopy(src.ay1, 0, ay1, 0, n);
+            System.arraycopy(src.ax2, 0, ax2, 0, n);
+            System.arraycopy(src.ay2, 0, ay2, 0, n);
+            System.arraycopy(src.bx1, 0, bx1, 0, n);
+            System.arraycopy(src.by1, 0, by1, 0, n);
+            System.arraycopy(src.bx2, 0, bx2, 0, n);
+            System.arraycopy(src.by2, 0, by2, 0, n);
+            valid = n;
+        }
+
+        void grow(int n) {
+            ax1 = Arrays.copyOf(ax1, n);  ay1 = Arrays.copyOf(ay1, n);
+            ax2 = Arrays.copyOf(ax2, n);  ay2 = Arrays.copyOf(ay2, n);
+            bx1 = Arrays.copyOf(bx1, n);  by1 = Arrays.copyOf(by1, n);
+            bx2 = Arrays.copyOf(bx2, n);  by2 = Arrays.copyOf(by2, n);
+        }
+    }
+
+    // the tangent lines of every segment for radius r, or null if r is not
+    // cached and no other radius went out of use
+    Offsets offsets(double r) {
+        Offsets[] cache = offsets;
+        for (Offsets o : cache) {
+            if (o.radius == r) {
+                if (o.valid < count) return fill(r, null, false);
+                if (o.idle != 0) o.idle = 0;  // rarely written, shared by threads
+                return o;
+            }
+        }
+        if (cache.length < RADII) return fill(r, null, false);
+
+        // the radius under the clock hand goes if it was not used while the
+        // hand passed it IDLE times, else r is not cached and the query
+        // computes the tangents it tests. A lost count only keeps it longer.
+        Offsets old = cache[Math.floorMod(hand.getAndIncrement(), RADII)];
+        if (old.idle++ < IDLE) return null;
+        return fill(r, old, false);
+    }
+
+    // compute the tangent lines for r now, instead of on the first query
+    public void prepare(double r) {
+        fill(r, null, true);
+    }
+
+    // adds r to the cache if it is not in it, in place of old if the cache
+    // is full, and computes the tangents of the segments it has none for yet
+    private synchronized Offsets fill(double r, Offsets old, boolean force) {
+        Offsets o = null;
+        for (Offsets c : offsets) {
+            if (c.radius == r) o = c;
+        }
+
+        if (o == null) {
+            Offsets[] cache = Arrays.copyOf(offsets, Math.min(offsets.length+1, RADII));
+            int at = cache.length-1;
+            if (cache.length == offsets.length) {
+                // old may have been replaced or used again since
+                at = -1;
+                for (int i = 0; i < cache.length; i++) {
+                    if (cache[i] == old) at = i;
+                }
+                if (force) {
+                    if (at < 0) at = Math.floorMod(hand.getAndIncrement(), RADII);
+                } else if (at < 0 || old.idle < IDLE) {
+                    return null;
+                }
+            }
+            // the arrays of a dropped radius may still be read by another
+            // query, so they are not reused
+            o = new Offsets(r, x1.length);
+            cache[at] = o;
+            offsets = cache;
+        }
+
+        if (o.valid < count) {
+            if (o.ax1.length < count) o.grow(x1.length);
+            for (int i = o.valid; i < count; i++) offset(o, i, r);
+            o.valid = count;
+        }
+        return o;
+    }
+
+    private void offset(Offsets o, int i, double r) {
+        double ox = -uy[i]*r;
+        double oy =  ux[i]*r;
+        o.ax1[i] = x1[i]+ox;  o.ay1[i] = y1[i]+oy;
+        o.ax2[i] = x2[i]+ox;  o.ay2[i] = y2[i]+oy;
+        o.bx1[i] = x1[i]-ox;  o.by1[i] = y1[i]-oy;
+        o.bx2[i] = x2[i]-ox;  o.by2[i] = y2[i]-oy;
+    }
+
+
+    // Accessors --------------------------------------------------------------
+    public int size()          { return count; }
+    public double x1(int i)    { return x1[i]; }
+    public double y1(int i)    { return y1[i]; }
+    public double x2(int i)    { return x2[i]; }
+    public double y2(int i)    { return y2[i]; }
+    public SpatialHash index() { return index; }
+
+
+    private void grow(int n) {
+        x1  = Arrays.copyOf(x1,  n);
+        y1  = Arrays.copyOf(y1,  n);
+        x2  = Arrays.copyOf(x2,  n);
+        y2  = Arrays.copyOf(y2,  n);
+        ux  = Arrays.copyOf(ux,  n);
+        uy  = Arrays.copyOf(uy,  n);
+        shared = Arrays.copyOf(shared, n);
+    }
+
+}
@@ -0,0 +1,463 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The physics and rules of the sample game, without any graphics.
+ *
+ * One step is one tick of the game (25 ms of game time): gravity, friction,
+ * position update, collision detection and the goal/score check. The step
+ * rate can be raised with setRate for a finer simulation: velocities stay in
+ * px per TICK, and gravity, friction and the movement of a step are scaled
+ * to its length, so the ball flies the same curves (up to the integration
+ * error) and time and score are the same in game time. At RATE it is
+ * exactly the game as it always was.
+ *
+ * Nothing here depends on AWT or Swing, so a level attempt can be simulated
+ * as fast as the cpu allows, e.g. for replays or tests. PhysicsLoop drives
+ * it on its own thread and GameWorld only renders the state.
+ *
+ * A ReplayWriter can be attached to record every step and player input of
+ * the current level. With EngineStats.ENABLED every step is measured into
+ * stats and reported to Flight Recorder.
+ *
+ * A ball that stayed within SLEEP_DISTANCE of one spot for SLEEP_STEPS steps
+ * is resting on something (under gravity it can not hover that long) and is
+ * put to sleep: its velocity is zeroed and the steps skip the physics and
+ * collision detection until a line is drawn near it or the level is reset.
+ * A resting ball still bounces in place by up to a pixel, so it is its
+ * speed over those steps that has to be under SLEEP_SPEED, not the speed of
+ * one step. A ball creeping faster than that never sleeps, it only sleeps
+ * where it would have stopped.
+ *
+ * A Checkpoint holds the state of an attempt, and the last HISTORY seconds
+ * of steps are kept as one each, to rewind. Neither copies the level: the
+ * player lines are shared with PlayerLines until they change, and drawData
+ * only has the player lines after the level, so going back to a checkpoint
+ * (or resetting) truncates those off and adds the ones of the checkpoint.
+ * It costs the same for a level of any size.
+ *
+ */
+
+package collision;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public class Simulation {
+
+    static final int    TICK   = 25;   // ms of game time per step at RATE
+    static final int    RATE   = 1000/TICK; // steps per second
+    static final double RADIUS = 16;   // ball radius, by default
+
+    static final double GRAVITY  = 0.25; // added to vy every TICK
+    static final double FRICTION = 0.98; // velocity kept every TICK
+
+    static final double SLEEP_SPEED    = 0.01; // px per TICK, on average
+    static final double SLEEP_DISTANCE = 1;    // px, a resting ball bounces
+    static final int    SLEEP_STEPS    =       // at RATE
+        (int) Math.ceil(SLEEP_DISTANCE/SLEEP_SPEED);
+    static final double WAKE_DISTANCE  = 4;    // px around the ball
+
+    static final int HISTORY = 10; // seconds of steps kept to rewind
+
+    SegmentWorld worldData = new SegmentWorld(); // level lines
+    SegmentWorld drawData  = new SegmentWorld(); // level and player lines
+    private SegmentWorld base;                   // level drawData starts with
+
+    // the player lines of drawData, compacted
+    final PlayerLines playerLines = new PlayerLines();
+
+    double[] p = {20,20};    // ball position
+    double[] v = {0,0};      // velocity vector, px per TICK
+    double radius = RADIUS;
+
+    // steps per second, the TICKs in one, and the constants for one step
+    int rate = RATE;
+    double h = 1;
+    double gravity = GRAVITY;
+    double friction = FRICTION;
+    int sleepSteps = SLEEP_STEPS;
+
+    int score = 0;
+    int steps = 0;   // of this attempt at this rate, until the goal
+    double before = 0; // ms of game time of the attempt at the rates before
+    int time = 0;    // ms of game time
+    int length = 0;
+    int lines = 0;   // player lines accepted
+    boolean goal = false;
+
+    // goal region {x1, y1, x2, y2}, the ball scores when its center is in it
+    int[] goalArea = {730, 540, 800, 600};
+
+    // resting contact: steps the ball stayed near (restX, restY)
+    int still = 0;
+    double restX, restY;
+    boolean asleep = false;
+
+    // records steps and input if not null
+    ReplayWriter recorder = null;
+
+    // the state after each of the last steps, a ring from history[last]
+    // back, kept is how many are valid
+    private Checkpoint[] history;
+    private int last = 0, kept = 0;
+
+    // filled only if EngineStats.ENABLED
+    final EngineStats stats = new EngineStats();
+
+    // reused by every collision detection call
+    final ContactBuffer contacts = new ContactBuffer();
+    private final double[] update = new double[4];
+
+
+    public Simulation(int[][] levelData) {
+        for (int[] il : levelData) worldData.add(il);
+        setRate(RATE);
+        reset();
+    }
+
+    // level as loaded by LevelFile, used as it is (not copied).
+    public Simulation(SegmentWorld level) {
+        worldData = level;
+        setRate(RATE);
+        reset();
+    }
+
+    // a new level ends the recording, see record
+    public void setLevel(int[][] levelData) {
+        recorder = null;
+        worldData = new SegmentWorld();
+        for (int[] il : levelData) worldData.add(il);
+        stats.reset();
+        reset();
+    }
+
+    public void setLevel(SegmentWorld level) {
+        recorder = null;
+        worldData = level;
+        stats.reset();
+        reset();
+    }
+
+    // the goal region of the level, kept by setLevel. A goal around the start
+    // is reached on the very first step, at a time of 0.
+    public void setGoal(int x1, int y1, int x2, int y2) {
+        checkGoal(x1, y1, x2, y2);
+        goalArea[0] = x1;
+        goalArea[1] = y1;
+        goalArea[2] = x2;
+        goalArea[3] = y2;
+        if (recorder != null) recorder.goal(x1, y1, x2, y2);
+    }
+
+    static void checkGoal(int x1, int y1, int x2, int y2) {
+        if (x2 <= x1 || y2 <= y1)
+            throw new IllegalArgumentException(
+                "empty goal "+x1+","+y1+" "+x2+","+y2);
+    }
+
+    // the size of the ball, keeps where it is. drawData keeps the tangents
+    // of a few radii, so changing it back and forth is cheap.
+    public void setRadius(double r) {
+        radius = r;
+        wake();
+        if (recorder != null) recorder.radius(r);
+    }
+
+    // steps per second, keeps the state of the ball and the game time. The
+    // steps of the rewind history are of the old rate, so it is cleared.
+    public void setRate(int stepsPerSecond) {
+        before += steps*1000.0/rate;
+        still = (int) ((long) still*stepsPerSecond/rate);
+        steps = 0;
+
+        rate(stepsPerSecond);
+        save();
+        if (recorder != null) recorder.rate(stepsPerSecond);
+    }
+
+    // the constants of a step at the rate, and an empty history
+    private void rate(int stepsPerSecond) {
+        rate = stepsPerSecond;
+        h = 1000.0/(rate*TICK);
+        gravity = GRAVITY*h;
+        friction = Math.pow(FRICTION, h);
+        sleepSteps = (int) Math.ceil(SLEEP_STEPS/h);
+
+        history = new Checkpoint[HISTORY*rate+1];
+        for (int i = 0; i < history.length; i++) history[i] = new Checkpoint();
+        kept = 0;
+    }
+
+    public void reset() {
+        p[0] = p[1] = 18;
+        v[0] = v[1] = 0;
+
+        steps = 0;
+        before = 0;
+        time = 0;
+        length = 0;
+        lines = 0;
+        score = 0;
+        goal = false;
+        wake();
+
+        // a new level is copied once, after that only the player lines go
+        if (base != worldData) {
+            drawData.set(worldData);
+            base = worldData;
+        } else {
+            drawData.truncate(worldData.size());
+        }
+        playerLines.clear();
+
+        kept = 0;
+        save();
+
+        if (recorder != null) recorder.reset();
+    }
+
+    // start recording to w, or stop if null. The caller closes the writer,
+    // also after setLevel, which stops it: a replay is of one level.
+    public void record(ReplayWriter w) {
+        recorder = w;
+    }
+
+
+    // Step -------------------------------------------------------------------
+    public void step() {
+        StepEvent event = null;
+        long start = 0;
+        if (EngineStats.ENABLED) {
+            event = new StepEvent();
+            event.begin();
+            start = System.nanoTime();
+        }
+
+        if (asleep) {
+            // nothing to do, only the counters of the (skipped) call
+            contacts.clear();
+        } else {
+            // basic gravitation and friction
+            v[1] += gravity;
+            v[0] *= friction; // somehow makes the ball feel heavier
+            v[1] *= friction;
+            // Update position, by the movement of this step
+            p[0] += v[0]*h;
+            p[1] += v[1]*h;
+            // run collision detection for new position
+            CollisionDetection.collisionDetection(
+                p[0], p[1], radius, v[0]*h, v[1]*h, drawData, contacts, update);
+
+            p[0] = update[0];
+            p[1] = update[1];
+            v[0] = update[2]/h;
+            v[1] = update[3]/h;
+
+            if (Math.hypot(p[0]-restX, p[1]-restY) >= SLEEP_DISTANCE) {
+                restX = p[0];
+                restY = p[1];
+                still = 0;
+            }
+            else if (++still >= sleepSteps) sleep();
+        }
+
+        if (EngineStats.ENABLED) {
+            stats.record(contacts, System.nanoTime()-start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.iterations = stats.iterations;
+                event.candidates = stats.candidates;
+                event.tested     = stats.tested;
+                event.contacts   = stats.contacts;
+                event.bounces    = stats.bounces;
+                event.fallback   = stats.fallback;
+                event.commit();
+            }
+        }
+
+        if (p[0] >= goalArea[0] && p[1] >= goalArea[1] &&
+            p[0] <  goalArea[2] && p[1] <  goalArea[3]) {
+            goal = true;
+            // the game used to throw here if no line had been drawn
+            score = (100000/Math.max(time, 1))*(2000/Math.max(length, 1));
+        }
+
+        // update timer, from the steps so it does not drift at any rate
+        if (!goal) time = (int) (before+ ++steps*1000.0/rate);
+
+        if (recorder != null) {
+            try {
+                recorder.tick(p[0], p[1], v[0], v[1]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        save();
+    }
+
+    public void step(int n) {
+        for (int i = 0; i < n; i++) step();
+    }
+
+
+    // Sleeping ---------------------------------------------------------------
+    void sleep() {
+        asleep = true;
+        v[0] = v[1] = 0;
+    }
+
+    public void wake() {
+        asleep = false;
+        still = 0;
+    }
+
+    public boolean asleep() {
+        return asleep;
+    }
+
+
+    // Checkpoints ------------------------------------------------------------
+    // the state of an attempt at one step, of the level it was taken in
+    public static final class Checkpoint {
+        SegmentWorld level;
+        int rate;
+        double px, py, vx, vy, radius;
+        int steps, time, length, lines, score, still;
+        double before;
+        double restX, restY;
+        boolean goal, asleep;
+        PlayerLines.State drawn;
+
+        // makes this a copy of c
+        void set(Checkpoint c) {
+            level = c.level;
+            rate = c.rate;
+            px = c.px;
+            py = c.py;
+            vx = c.vx;
+            vy = c.vy;
+            radius = c.radius;
+            steps = c.steps;
+            time = c.time;
+            length = c.length;
+            lines = c.lines;
+            score = c.score;
+            still = c.still;
+            before = c.before;
+            restX = c.restX;
+            restY = c.restY;
+            goal = c.goal;
+            asleep = c.asleep;
+            drawn = c.drawn;
+        }
+    }
+
+    public Checkpoint checkpoint() {
+        Checkpoint c = new Checkpoint();
+        save(c);
+        return c;
+    }
+
+    // back to c, which must be of the current level, at the rate it was
+    // taken at. The history starts over there.
+    public void restore(Checkpoint c) {
+        if (c.level != worldData) {
+            throw new IllegalArgumentException("checkpoint of another level");
+        }
+        if (c.rate != rate) rate(c.rate);
+        load(c);
+        kept = 0;
+        save();
+    }
+
+    // goes back n steps, as far as the history reaches. Returns the steps it
+    // went back.
+    public int rewind(int n) {
+        n = Math.min(n, kept-1);
+        if (n <= 0) return 0;
+        last = Math.floorMod(last-n, history.length);
+        kept -= n;
+        load(history[last]);
+        return n;
+    }
+
+    private void load(Checkpoint c) {
+        p[0] = c.px;
+        p[1] = c.py;
+        v[0] = c.vx;
+        v[1] = c.vy;
+        radius = c.radius;
+        steps = c.steps;
+        before = c.before;
+        time = c.time;
+        length = c.length;
+        lines = c.lines;
+        score = c.score;
+        still = c.still;
+        restX = c.restX;
+        restY = c.restY;
+        goal = c.goal;
+        asleep = c.asleep;
+
+        // only if lines were drawn since
+        if (playerLines.state() != c.drawn) {
+            playerLines.restore(c.drawn);
+            playerLines.update(drawData, worldData.size());
+        }
+
+        // the recording goes on from the restored state
+        if (recorder != null) recorder.restore(c);
+    }
+
+    // the current state into the history
+    private void save() {
+        last = (last+1) % history.length;
+        kept = Math.min(kept+1, history.length);
+        save(history[last]);
+    }
+
+    private void save(Checkpoint c) {
+        c.level = worldData;
+        c.rate = rate;
+        c.px = p[0];
+        c.py = p[1];
+        c.vx = v[0];
+        c.vy = v[1];
+        c.radius = radius;
+        c.steps = steps;
+        c.before = before;
+        c.time = time;
+        c.length = length;
+        c.lines = lines;
+        c.score = score;
+        c.still = still;
+        c.restX = restX;
+        c.restY = restY;
+        c.goal = goal;
+        c.asleep = asleep;
+        c.drawn = playerLines.state();
+    }
+
+
+    // Player lines -----------------------------------------------------------
+    // adds a line unless it is drawn on the ball, returns false if it was.
+    // The player lines are compacted, and the ones that changed replaced in
+    // drawData.
+    public boolean addLine(int x1, int y1, int x2, int y2) {
+        if (CollisionDetection.toClose(p[0], p[1], radius, x1, y1, x2, y2)) {
+            return false;
+        }
+        if (!goal) length += Math.hypot(x2-x1, y2-y1);
+        lines++;
+        playerLines.add(x1, y1, x2, y2, p[0], p[1], radius+WAKE_DISTANCE);
+        playerLines.update(drawData, worldData.size());
+        if (asleep && CollisionDetection.toClose(p[0], p[1],
+                radius+WAKE_DISTANCE, x1, y1, x2, y2)) wake();
+        if (recorder != null) recorder.line(x1, y1, x2, y2);
+        return true;
+    }
+
+}
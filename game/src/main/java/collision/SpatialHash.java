@@ -0,0 +1,238 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * A uniform grid broadphase for line segments, stored as a spatial hash.
+ *
+ * Segments are identified by an integer id (usually their index in the world
+ * list) and registered in every cell their bounding box touches. A query for
+ * a box returns each id whose cells overlap it exactly once. Cells that hash
+ * to the same bucket share a chain, so a query may return a few segments that
+ * are not actually near the box; the narrowphase sorts those out. The table
+ * doubles its bucket count whenever there are more than two entries per
+ * bucket, so the chains stay short in large worlds.
+ *
+ * The box of the cells that hold entries is kept, so a ray walking the grid
+ * can stop where there is nothing left to find. Truncating does not shrink
+ * it, it only ever holds more cells than needed.
+ *
+ * Queries may run concurrently if each thread passes its own HashQuery and
+ * nothing is inserted meanwhile.
+ *
+ */
+
+package collision;
+
+import static java.lang.Math.floor;
+
+import java.util.Arrays;
+
+public class SpatialHash {
+
+    double cellSize;
+    int mask;
+
+    // bucket -> first entry of its chain, -1 if empty
+    int[] head;
+
+    // entry -> next entry in chain / segment id / cell
+    int[] next     = new int[256];
+    int[] entrySeg = new int[256];
+    int[] entryX   = new int[256];
+    int[] entryY   = new int[256];
+    int   entries  = 0;
+
+    // cells holding entries, empty if minX > maxX
+    int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+
+    // used by the single threaded query(...)
+    private final HashQuery own = new HashQuery();
+
+
+    public SpatialHash() {
+        this(64, 1024);
+    }
+
+    // buckets is rounded up to a power of two
+    public SpatialHash(double cellSize, int buckets) {
+        int n = Integer.highestOneBit(Math.max(buckets-1, 1)) << 1;
+        this.cellSize = cellSize;
+        this.mask = n-1;
+        this.head = new int[n];
+        Arrays.fill(head, -1);
+    }
+
+    // a hash from its raw tables, as stored by LevelFile
+    SpatialHash(double cellSize, int[] head, int[] next, int[] entrySeg,
+                int[] entryX, int[] entryY, int entries) {
+        this.cellSize = cellSize;
+        this.mask = head.length-1;
+        this.head = head;
+        this.next = next;
+        this.entrySeg = entrySeg;
+        this.entryX = entryX;
+        this.entryY = entryY;
+        this.entries = entries;
+        for (int e = 0; e < entries; e++) {
+            extend(entryX[e], entryY[e], entryX[e], entryY[e]);
+        }
+    }
+
+
+    // Insert -----------------------------------------------------------------
+    public void insert(int id, double x1, double y1, double x2, double y2) {
+        int cx0 = cell(Math.min(x1,x2));
+        int cy0 = cell(Math.min(y1,y2));
+        int cx1 = cell(Math.max(x1,x2));
+        int cy1 = cell(Math.max(y1,y2));
+        extend(cx0, cy0, cx1, cy1);
+
+        for (int x = cx0; x <= cx1; x++) {
+            for (int y = cy0; y <= cy1; y++) {
+                if (entries == next.length) grow(Math.max(256, entries*2));
+                int b = bucket(x, y);
+                next[entries]     = head[b];
+                entrySeg[entries] = id;
+                entryX[entries]   = x;
+                entryY[entries]   = y;
+                head[b] = entries++;
+            }
+        }
+
+        if (entries > 2*head.length) rehash(head.length*2);
+    }
+
+    // removes the entries of the segments from id n on, which must be the
+    // last ones inserted. Every chain starts with its newest entry, so each
+    // removed entry is the head of its chain when its turn comes.
+    public void truncate(int n) {
+        while (entries > 0 && entrySeg[entries-1] >= n) {
+            int e = --entries;
+            head[bucket(entryX[e], entryY[e])] = next[e];
+        }
+    }
+
+    // rebuild the chains for a new bucket count, oldest entry first so every
+    // chain keeps its order.
+    private void rehash(int buckets) {
+        head = new int[buckets];
+        mask = buckets-1;
+        Arrays.fill(head, -1);
+        for (int e = 0; e < entries; e++) {
+            int b = bucket(entryX[e], entryY[e]);
+            next[e] = head[b];
+            head[b] = e;
+        }
+    }
+
+
+    private void grow(int n) {
+        next     = Arrays.copyOf(next,     n);
+        entrySeg = Arrays.copyOf(entrySeg, n);
+        entryX   = Arrays.copyOf(entryX,   n);
+        entryY   = Arrays.copyOf(entryY,   n);
+    }
+
+
+    // Clear / Copy -----------------------------------------------------------
+    // keeps the allocated storage (and bucket count), so refilling the grid
+    // does not allocate.
+    public void clear() {
+        Arrays.fill(head, -1);
+        entries = 0;
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = Integer.MIN_VALUE;
+    }
+
+    // make this an exact copy of src, reusing the storage if it fits.
+    public void set(SpatialHash src) {
+        cellSize = src.cellSize;
+        mask = src.mask;
+        if (head.length == src.head.length) {
+            System.arraycopy(src.head, 0, head, 0, head.length);
+        } else {
+            head = src.head.clone();
+        }
+        if (next.length < src.entries) grow(src.entries);
+        entries = src.entries;
+        System.arraycopy(src.next,     0, next,     0, entries);
+        System.arraycopy(src.entrySeg, 0, entrySeg, 0, entries);
+        System.arraycopy(src.entryX,   0, entryX,   0, entries);
+        System.arraycopy(src.entryY,   0, entryY,   0, entries);
+        minX = src.minX;
+        minY = src.minY;
+        maxX = src.maxX;
+        maxY = src.maxY;
+    }
+
+
+    // Query ------------------------------------------------------------------
+    // returns the number of candidates, which are stored in hits().
+    public int query(double minX, double minY, double maxX, double maxY) {
+        return query(minX, minY, maxX, maxY, own);
+    }
+
+    // returns the number of candidates, which are stored in q.hits().
+    public int query(double minX, double minY, double maxX, double maxY,
+                     HashQuery q) {
+        q.next();
+
+        // only the cells that hold entries, which also keeps the loops
+        // below finite for a huge or infinite box
+        int cx0 = Math.max(cell(minX), this.minX);
+        int cy0 = Math.max(cell(minY), this.minY);
+        int cx1 = Math.min(cell(maxX), this.maxX);
+        int cy1 = Math.min(cell(maxY), this.maxY);
+        int n = 0;
+        if (cx0 > cx1 || cy0 > cy1) return 0;
+
+        // a box covering more cells than there are buckets would only visit
+        // the same chains over and over, so just walk every bucket once.
+        if (((long)cx1-cx0+1)*((long)cy1-cy0+1) > head.length) {
+            for (int b = 0; b < head.length; b++) n = collect(b, n, q);
+            return n;
+        }
+
+        for (int x = cx0; x <= cx1; x++) {
+            for (int y = cy0; y <= cy1; y++) {
+                n = collect(bucket(x, y), n, q);
+            }
+        }
+        return n;
+    }
+
+    public int[] hits() {
+        return own.hits();
+    }
+
+    // adds the candidates of cell (x, y) to the query q is running, for
+    // walking a ray cell by cell, returns the new count.
+    int queryCell(int x, int y, int n, HashQuery q) {
+        return collect(bucket(x, y), n, q);
+    }
+
+
+    // Helper functions -------------------------------------------------------
+    private int collect(int b, int n, HashQuery q) {
+        for (int e = head[b]; e != -1; e = next[e]) n = q.add(entrySeg[e], n);
+        return n;
+    }
+
+    int cell(double v) {
+        return (int) floor(v/cellSize);
+    }
+
+    private void extend(int x0, int y0, int x1, int y1) {
+        minX = Math.min(minX, x0);
+        minY = Math.min(minY, y0);
+        maxX = Math.max(maxX, x1);
+        maxY = Math.max(maxY, y1);
+    }
+
+    private int bucket(int x, int y) {
+        return ((x*73856093)^(y*19349663)) & mask;
+    }
+
+}
@@ -0,0 +1,45 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Java Flight Recorder event for one Simulation step, emitted when
+ * EngineStats.ENABLED is set. Record with e.g.
+ *
+ *     java -Dcollision.stats=true -XX:StartFlightRecording=filename=game.jfr ...
+ *
+ */
+
+package collision;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("collision.Step")
+@Label("Simulation Step")
+@Category("Collision")
+@Description("One tick of the game physics and its collision detection")
+class StepEvent extends jdk.jfr.Event {
+
+    @Label("Bounce Loop Iterations")
+    int iterations;
+
+    @Label("Broadphase Candidates")
+    int candidates;
+
+    @Label("Segments Tested")
+    int tested;
+
+    @Label("Intersections")
+    int contacts;
+
+    @Label("Bounces")
+    int bounces;
+
+    @Label("Fallback")
+    @Description("Budget that ran out: 0 none, 1 bounces, 2 time")
+    int fallback;
+
+}
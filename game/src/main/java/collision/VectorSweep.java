@@ -0,0 +1,99 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * SIMD version of the broadphase candidate test of CollisionDetection, on
+ * the incubating Vector API: the movement vector is tested against the grown
+ * bounding boxes of as many segments per instruction as the cpu has double
+ * lanes, gathered from the coordinate arrays of a SegmentWorld.
+ *
+ * Only loaded when CollisionDetection.VECTOR is true, that is when the jvm
+ * runs with --add-modules jdk.incubator.vector. It gives the same candidates
+ * and bounds as the scalar test, lane for lane.
+ *
+ */
+
+package collision;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+class VectorSweep {
+
+    private static final VectorSpecies<Double> S =
+        DoubleVector.SPECIES_PREFERRED;
+
+    // Candidates -------------------------------------------------------------
+    // adds the segments ids[0..n) the movement vector may hit to out, see
+    // CollisionDetection.candidate.
+    static void candidates(SegmentWorld w, int[] ids, int n, double r,
+            double cx0, double cy0, double dx, double dy,
+            ContactBuffer out) {
+
+        int lanes = S.length();
+        if (out.lanes.length < lanes) out.lanes = new double[lanes];
+        double[] t = out.lanes;
+
+        double g = r+CollisionDetection.SAME;
+        DoubleVector zero = DoubleVector.zero(S);
+        DoubleVector one  = DoubleVector.broadcast(S, 1);
+
+        int i = 0;
+        for (int end = S.loopBound(n); i < end; i += lanes) {
+            DoubleVector x1 = DoubleVector.fromArray(S, w.x1, 0, ids, i);
+            DoubleVector y1 = DoubleVector.fromArray(S, w.y1, 0, ids, i);
+            DoubleVector x2 = DoubleVector.fromArray(S, w.x2, 0, ids, i);
+            DoubleVector y2 = DoubleVector.fromArray(S, w.y2, 0, ids, i);
+
+            DoubleVector t0 = zero;
+            DoubleVector t1 = one;
+            VectorMask<Double> keep = S.maskAll(true);
+
+            DoubleVector lo = x1.min(x2).sub(g);
+            DoubleVector hi = x1.max(x2).add(g);
+            if (dx == 0) {
+                keep = keep.and(lo.compare(VectorOperators.LE, cx0))
+                           .and(hi.compare(VectorOperators.GE, cx0));
+            } else {
+                DoubleVector ta = lo.sub(cx0).div(dx);
+                DoubleVector tb = hi.sub(cx0).div(dx);
+                t0 = t0.max(ta.min(tb));
+                t1 = t1.min(ta.max(tb));
+            }
+
+            lo = y1.min(y2).sub(g);
+            hi = y1.max(y2).add(g);
+            if (dy == 0) {
+                keep = keep.and(lo.compare(VectorOperators.LE, cy0))
+                           .and(hi.compare(VectorOperators.GE, cy0));
+            } else {
+                DoubleVector ta = lo.sub(cy0).div(dy);
+                DoubleVector tb = hi.sub(cy0).div(dy);
+                t0 = t0.max(ta.min(tb));
+                t1 = t1.min(ta.max(tb));
+            }
+
+            keep = keep.and(t0.compare(VectorOperators.LE, t1));
+            long bits = keep.toLong();
+            if (bits == 0) continue;
+
+            t0.intoArray(t, 0);
+            while (bits != 0) {
+                int j = Long.numberOfTrailingZeros(bits);
+                out.addCandidate(ids[i+j], t[j]);
+                bits &= bits-1;
+            }
+        }
+
+        // the tail that does not fill a vector
+        for (; i < n; i++) {
+            int s = ids[i];
+            CollisionDetection.candidate(w.x1[s], w.y1[s], w.x2[s], w.y2[s],
+                                         s, r, cx0, cy0, dx, dy, out);
+        }
+    }
+
+}
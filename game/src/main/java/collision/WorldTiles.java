@@ -0,0 +1,191 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The lines of a world, a level and the lines drawn on it, rasterized in
+ * SIZE x SIZE tiles, rendered when first painted and kept in a least
+ * recently used cache of a fixed number of tiles. A tile only draws the
+ * segments the spatial hash returns for it, so painting the viewport costs
+ * the same in a world of any size, and so does the memory.
+ *
+ * The level alone is kept in a second cache of baseline tiles, which a tile
+ * starts as a copy of. So when the drawn lines are reset or rewound (clear)
+ * the tiles are copies again, the level lines are not drawn again.
+ *
+ * Tiles are addressed in world coordinates, tile (tx, ty) covers x in
+ * [tx*SIZE, (tx+1)*SIZE) and y in [ty*SIZE, (ty+1)*SIZE).
+ *
+ * Not thread safe, used on the EDT.
+ *
+ */
+
+package collision;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class WorldTiles {
+
+    static final int SIZE = 256;
+
+    private SegmentWorld lines;
+    private SegmentWorld drawn;
+    private int[] goal;
+
+    // tile key -> image, in access order: level and drawn lines, and the
+    // level alone
+    private final Cache tiles;
+    private final Cache baseline;
+
+    private final HashQuery query = new HashQuery();
+
+
+    // capacity should hold the tiles of a few viewports
+    WorldTiles(int capacity) {
+        tiles = new Cache(capacity);
+        baseline = new Cache(capacity);
+    }
+
+    // the level, the lines drawn on it and the goal region {x1, y1, x2, y2},
+    // all used as they are. Drops every tile.
+    void set(SegmentWorld lines, SegmentWorld drawn, int[] goal) {
+        this.lines = lines;
+        this.drawn = drawn;
+        this.goal = goal;
+        tiles.clear();
+        baseline.clear();
+    }
+
+    // drops the tiles with drawn lines, e.g. when lines were removed. The
+    // baseline tiles of the level are kept.
+    void clear() {
+        tiles.clear();
+    }
+
+    // draws a line added to the world into the cached tiles it crosses, the
+    // others render it when they are painted.
+    void addLine(int x1, int y1, int x2, int y2) {
+        for (int tx = tile(Math.min(x1, x2)); tx <= tile(Math.max(x1, x2)); tx++) {
+            for (int ty = tile(Math.min(y1, y2)); ty <= tile(Math.max(y1, y2)); ty++) {
+                BufferedImage t = tiles.get(key(tx, ty));
+                if (t == null) continue;
+                Graphics g = t.createGraphics();
+                g.setColor(Color.WHITE);
+                g.drawLine(x1-tx*SIZE, y1-ty*SIZE, x2-tx*SIZE, y2-ty*SIZE);
+                g.dispose();
+            }
+        }
+    }
+
+
+    // Paint ------------------------------------------------------------------
+    // paints the world area (x, y, w, h) to g, which is at (camX, camY) in
+    // the world.
+    void paint(Graphics g, int x, int y, int w, int h, int camX, int camY) {
+        for (int tx = tile(x); tx <= tile(x+w-1); tx++) {
+            for (int ty = tile(y); ty <= tile(y+h-1); ty++) {
+                BufferedImage t = tiles.get(key(tx, ty));
+                if (t == null) t = render(tx, ty);
+
+                // only the part inside the area
+                int x0 = Math.max(x, tx*SIZE),   y0 = Math.max(y, ty*SIZE);
+                int x1 = Math.min(x+w, (tx+1)*SIZE), y1 = Math.min(y+h, (ty+1)*SIZE);
+                g.drawImage(t, x0-camX, y0-camY, x1-camX, y1-camY,
+                               x0-tx*SIZE, y0-ty*SIZE, x1-tx*SIZE, y1-ty*SIZE,
+                               null);
+            }
+        }
+    }
+
+    private BufferedImage render(int tx, int ty) {
+        BufferedImage b = baseline.get(key(tx, ty));
+        if (b == null) b = renderBaseline(tx, ty);
+
+        BufferedImage t = tiles.take();
+        Graphics2D g = t.createGraphics();
+        g.drawImage(b, 0, 0, null);
+        g.setColor(Color.WHITE);
+        drawLines(g, drawn, tx*SIZE, ty*SIZE);
+        drawGoal(g, tx*SIZE, ty*SIZE);   // on top, as on the baseline
+        g.dispose();
+
+        tiles.put(key(tx, ty), t);
+        return t;
+    }
+
+    private BufferedImage renderBaseline(int tx, int ty) {
+        BufferedImage t = baseline.take();
+        int ox = tx*SIZE, oy = ty*SIZE;
+        Graphics2D g = t.createGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, SIZE, SIZE);
+
+        // with a pixel of margin, as the coordinates are truncated to draw
+        g.setColor(Color.WHITE);
+        drawLines(g, lines, ox, oy);
+        drawGoal(g, ox, oy);
+        g.dispose();
+
+        baseline.put(key(tx, ty), t);
+        return t;
+    }
+
+
+    private void drawLines(Graphics g, SegmentWorld w, int ox, int oy) {
+        int n = w.index().query(ox-1, oy-1, ox+SIZE, oy+SIZE, query);
+        int[] hits = query.hits();
+        for (int i = 0; i < n; i++) {
+            int s = hits[i];
+            g.drawLine((int)w.x1(s)-ox, (int)w.y1(s)-oy,
+                       (int)w.x2(s)-ox, (int)w.y2(s)-oy);
+        }
+    }
+
+    private void drawGoal(Graphics g, int ox, int oy) {
+        g.setColor(Color.GREEN);
+        g.drawLine(goal[0]-1-ox, goal[1]-oy, goal[2]-3-ox, goal[1]-oy);
+    }
+
+
+    // Cache ------------------------------------------------------------------
+    // least recently used tiles, the last evicted image is reused by the
+    // next render
+    private static class Cache extends LinkedHashMap<Long, BufferedImage> {
+        private final int capacity;
+        private BufferedImage spare;
+
+        Cache(int capacity) {
+            super(capacity*2, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> e) {
+            if (size() <= capacity) return false;
+            spare = e.getValue();
+            return true;
+        }
+
+        BufferedImage take() {
+            BufferedImage t = spare;
+            spare = null;
+            if (t == null) t = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+            return t;
+        }
+    }
+
+
+    // Helper functions -------------------------------------------------------
+    static int tile(int v) {
+        return Math.floorDiv(v, SIZE);
+    }
+
+    private static Long key(int tx, int ty) {
+        return ((long)tx << 32) | (ty & 0xFFFFFFFFL);
+    }
+
+}
@@ -0,0 +1,152 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The early exit of CollisionDetection: on seeded random worlds and moves
+ * the first bounce is the nearest intersection of all features of all
+ * segments. And the budgets of a call: a ball wedged between two walls stops
+ * at the bounce a budget ran out at.
+ *
+ */
+
+package collision;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class CollisionDetectionTest {
+
+    static final int WORLDS = 20;
+    static final int MOVES  = 500;
+
+
+    // Early exit -------------------------------------------------------------
+    @Test
+    void firstBounceIsTheNearestOfAll() {
+        Random rnd = new Random(4);
+        ContactBuffer b = new ContactBuffer();
+        ContactBuffer all = new ContactBuffer();
+        b.maxBounces = 1;
+        double[] rb = new double[4];
+        for (int k = 0; k < WORLDS; k++) {
+            SegmentWorld w = Worlds.packed(Worlds.lines(rnd, 1000));
+            for (int i = 0; i < MOVES; i++) {
+                double[] m = Worlds.move(rnd);
+                double r = m[4];
+                double cx0 = m[0]-m[2], cy0 = m[1]-m[3];
+                CollisionDetection.collisionDetection(
+                    m[0], m[1], r, m[2], m[3], w, b, rb);
+
+                // every intersection of the move with every segment
+                all.clear();
+                for (int s = 0; s < w.size(); s++) {
+                    double x1 = w.x1[s], y1 = w.y1[s], x2 = w.x2[s], y2 = w.y2[s];
+                    CollisionDetection.clIntersection(x1, y1, r, cx0, cy0, m[0], m[1], all, 0);
+                    if (x1 == x2 && y1 == y2) continue;
+                    CollisionDetection.clIntersection(x2, y2, r, cx0, cy0, m[0], m[1], all, 0);
+                    double ox = -w.uy[s]*r, oy = w.ux[s]*r;
+                    CollisionDetection.llIntersection(cx0, cy0, m[0], m[1],
+                        x1+ox, y1+oy, x2+ox, y2+oy, all, 0);
+                    CollisionDetection.llIntersection(cx0, cy0, m[0], m[1],
+                        x1-ox, y1-oy, x2-ox, y2-oy, all, 0);
+                }
+                double move = m[2]*m[2]+m[3]*m[3];
+                double nearest = move;
+                for (int c = 0; c < all.contacts; c++) {
+                    double dx = all.x[c]-cx0, dy = all.y[c]-cy0;
+                    nearest = Math.min(nearest, dx*dx+dy*dy);
+                }
+
+                if (nearest == move) {
+                    assertEquals(0, b.bounces, "bounces");
+                } else {
+                    assertEquals(1, b.bounces, "bounces");
+                    double dx = b.bx[0]-cx0, dy = b.by[0]-cy0;
+                    assertEquals(nearest, dx*dx+dy*dy, 1e-6);
+                }
+            }
+        }
+    }
+
+
+
+    // Budgets ----------------------------------------------------------------
+    // walls at x 0 and 40, a ball of 16 in between flying 1000 px across
+    static SegmentWorld walls() {
+        SegmentWorld w = new SegmentWorld();
+        w.add(0, 0, 0, 400);
+        w.add(40, 0, 40, 400);
+        return w;
+    }
+
+    static void wedged(SegmentWorld w, ContactBuffer b, double[] result) {
+        CollisionDetection.collisionDetection(1020, 203, 16, 1000, 3, w, b, result);
+    }
+
+    @Test
+    void bounceBudgetStopsAtTheLastBounce() {
+        SegmentWorld w = walls();
+        ContactBuffer all = new ContactBuffer();
+        all.maxBounces = 1000;
+        double[] free = new double[4];
+        wedged(w, all, free);
+        assertEquals(ContactBuffer.NONE, all.fallback);
+        assertTrue(all.bounces > 64, "bounces "+all.bounces);
+
+        double[] result = new double[4];
+        for (int max : new int[] {1, 3, 10, 64}) {
+            ContactBuffer b = new ContactBuffer();
+            b.maxBounces = max;
+            wedged(w, b, result);
+            assertEquals(ContactBuffer.BOUNCE_BUDGET, b.fallback);
+            assertEquals(max, b.bounces);
+            for (int i = 0; i < max; i++) {
+                assertEquals(all.bx[i], b.bx[i], "bounce "+i);
+                assertEquals(all.by[i], b.by[i], "bounce "+i);
+            }
+            // at the last bounce point, between the walls
+            assertEquals(b.bx[max-1], result[0]);
+            assertEquals(b.by[max-1], result[1]);
+            assertTrue(result[0] >= 16-1e-9 && result[0] <= 24+1e-9);
+        }
+
+        // the default budget, and one that is not reached
+        ContactBuffer b = new ContactBuffer();
+        wedged(w, b, result);
+        assertEquals(ContactBuffer.BOUNCE_BUDGET, b.fallback);
+        assertEquals(64, b.bounces);
+        b.maxBounces = all.bounces+1;
+        wedged(w, b, result);
+        assertEquals(ContactBuffer.NONE, b.fallback);
+        assertArrayEquals(free, result, 0);
+    }
+
+    @Test
+    void timeBudgetStopsAtTheLastBounce() {
+        ContactBuffer b = new ContactBuffer();
+        b.maxBounces = 1000;
+        b.maxNanos = 1;
+        double[] result = new double[4];
+        wedged(walls(), b, result);
+        assertEquals(ContactBuffer.TIME_BUDGET, b.fallback);
+        assertTrue(b.bounces > CollisionDetection.TIME_CHECK && b.bounces < 1000);
+        assertEquals(b.bx[b.bounces-1], result[0]);
+        assertEquals(b.by[b.bounces-1], result[1]);
+
+        // checked only after TIME_CHECK bounces, so a short move is exact
+        ContactBuffer a = new ContactBuffer();
+        double[] exact = new double[4];
+        CollisionDetection.collisionDetection(30, 200, 16, 12, 0, walls(), a, exact);
+        CollisionDetection.collisionDetection(30, 200, 16, 12, 0, walls(), b, result);
+        assertEquals(ContactBuffer.NONE, b.fallback);
+        assertEquals(1, b.bounces);
+        assertArrayEquals(exact, result, 0);
+    }
+
+}
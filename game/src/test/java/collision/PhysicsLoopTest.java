@@ -0,0 +1,184 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The physics thread: commands from many threads applied in order,
+ * snapshots that never change while they are read, and the two states and
+ * game time a frame interpolates between at any rate.
+ *
+ */
+
+package collision;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class PhysicsLoopTest {
+
+    PhysicsLoop physics;
+
+    @AfterEach
+    void stop() {
+        if (physics != null) physics.stop();
+    }
+
+    // a floor just below the start, the ball comes to rest on it at once
+    static SegmentWorld floor() {
+        SegmentWorld w = new SegmentWorld();
+        for (int[] l : Levels.level1) w.add(l);
+        w.add(1, 40, 100, 40);
+        return w;
+    }
+
+    PhysicsLoop start(SegmentWorld level, int rate) {
+        physics = new PhysicsLoop(level, 1, rate);
+        physics.start();
+        return physics;
+    }
+
+    // the first snapshot that passes, or fails after a while
+    PhysicsLoop.Snapshot await(Predicate<PhysicsLoop.Snapshot> p) {
+        long end = System.nanoTime()+10_000_000_000L;
+        while (System.nanoTime() < end) {
+            PhysicsLoop.Snapshot s = physics.snapshot();
+            if (p.test(s)) return s;
+            Thread.onSpinWait();
+        }
+        fail("no such snapshot");
+        return null;
+    }
+
+
+    // Commands ---------------------------------------------------------------
+    @Test
+    void linesFromManyThreadsKeepTheirOrder() throws InterruptedException {
+        start(floor(), Simulation.RATE);
+        int threads = 4, each = 50;
+        Thread[] t = new Thread[threads];
+        for (int k = 0; k < threads; k++) {
+            int row = 200+k*80;
+            t[k] = new Thread(() -> {
+                // apart from each other, so none are merged
+                for (int i = 0; i < each; i++) {
+                    physics.addLine(100+i*12, row, 108+i*12, row+40);
+                }
+            });
+            t[k].start();
+        }
+        for (Thread th : t) th.join();
+
+        PhysicsLoop.Snapshot s = await(x -> x.lineCount == threads*each);
+        int[] next = new int[threads];
+        for (int i = 0; i < s.lineCount; i++) {
+            int k = (s.lines[i*4+1]-200)/80;
+            assertArrayEquals(
+                new int[] {100+next[k]*12, 200+k*80, 108+next[k]*12, 240+k*80},
+                Arrays.copyOfRange(s.lines, i*4, i*4+4), "line "+i);
+            next[k]++;
+        }
+        assertNull(s.error);
+    }
+
+    @Test
+    void resetAndLineOnTheBallStartOver() {
+        start(floor(), Simulation.RATE);
+        PhysicsLoop.Snapshot s = await(x -> x.tick > 100);
+        int generation = s.generation;
+        physics.addLine(300, 300, 400, 350);
+        s = await(x -> x.lineCount == 1);
+        assertEquals(generation, s.generation);
+
+        physics.reset();
+        s = await(x -> x.generation > generation);
+        assertEquals(0, s.lineCount);
+        int reset = s.generation;
+
+        // the ball rests at the start, on it a line resets the level
+        physics.addLine(300, 300, 400, 350);
+        await(x -> x.lineCount == 1);
+        int y = (int) Math.round(s.y);
+        physics.addLine(0, y, 40, y);
+        s = await(x -> x.generation > reset);
+        assertEquals(0, s.lineCount);
+        assertNull(s.error);
+    }
+
+
+    // Snapshots --------------------------------------------------------------
+    @Test
+    void heldSnapshotDoesNotChange() throws InterruptedException {
+        start(floor(), 200);
+        physics.addLine(300, 300, 400, 350);
+        PhysicsLoop.Snapshot s = await(x -> x.lineCount == 1 && x.tick > 10);
+        long tick = s.tick;
+        double x = s.x, y = s.y;
+        int[] lines = s.lines;
+        int[] held = Arrays.copyOf(lines, 4);
+
+        // many steps and lines later
+        for (int i = 0; i < 40; i++) physics.addLine(500+i*6, 100, 504+i*6, 140);
+        Thread.sleep(200);
+        assertEquals(tick, s.tick);
+        assertEquals(x, s.x);
+        assertEquals(y, s.y);
+        assertArrayEquals(held, Arrays.copyOf(lines, 4));
+
+        PhysicsLoop.Snapshot now = await(n -> n.lineCount == 41);
+        assertTrue(now.tick > tick);
+        assertArrayEquals(held, Arrays.copyOf(now.lines, 4));
+    }
+
+
+    // Interpolation ----------------------------------------------------------
+    @Test
+    void alphaIsTheShareOfTheStepGone() {
+        PhysicsLoop.Snapshot s = new PhysicsLoop.Snapshot();
+        s.at = 1000;
+        s.stepNanos = 100;
+        assertEquals(0, s.alpha(1000), 0);
+        assertEquals(0.5, s.alpha(1050), 0);
+        assertEquals(1, s.alpha(1100), 0);
+        // neither before the state, nor past the next one
+        assertEquals(0, s.alpha(900), 0);
+        assertEquals(1, s.alpha(1200), 0);
+    }
+
+    @Test
+    void snapshotIsTheLastTwoSteps() {
+        for (int rate : new int[] {Simulation.RATE, 120, 240}) {
+            long begin = System.nanoTime();
+            physics = new PhysicsLoop(Levels.level1, 1, rate);
+            physics.start();
+            PhysicsLoop.Snapshot s = await(x -> x.tick >= 2);
+            long elapsed = System.nanoTime()-begin;
+            physics.stop();
+            assertEquals(1_000_000_000L/rate, s.stepNanos);
+
+            // the same steps without a thread
+            Simulation sim = new Simulation(Levels.level1);
+            sim.setRate(rate);
+            sim.step((int) s.tick-1);
+            assertEquals(sim.p[0], s.prevX, "rate "+rate);
+            assertEquals(sim.p[1], s.prevY, "rate "+rate);
+            sim.step();
+            assertEquals(sim.p[0], s.x, "rate "+rate);
+            assertEquals(sim.p[1], s.y, "rate "+rate);
+
+            // game time at the rate, and no faster than the clock
+            assertEquals((int) (s.tick*1000.0/rate), s.time, "rate "+rate);
+            assertEquals(sim.time, s.time);
+            assertTrue(s.time <= elapsed/1_000_000+1000/rate, "rate "+rate);
+        }
+    }
+
+}
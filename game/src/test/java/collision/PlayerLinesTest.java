@@ -0,0 +1,207 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The compacted player lines: merging, joining, the shared endpoint flags,
+ * checkpoints of them, and update keeping a world as addTo would make it.
+ *
+ */
+
+package collision;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class PlayerLinesTest {
+
+    // a ball far away from everything
+    static final double FAR = 1e6;
+
+    static void add(PlayerLines p, int x1, int y1, int x2, int y2) {
+        p.add(x1, y1, x2, y2, FAR, FAR, 20);
+    }
+
+    static int[] segments(PlayerLines p) {
+        return Arrays.copyOf(p.lines, p.count*4);
+    }
+
+    static void assertSameWorld(SegmentWorld expected, SegmentWorld w) {
+        assertEquals(expected.size(), w.size(), "segments");
+        for (int i = 0; i < w.size(); i++) {
+            assertArrayEquals(
+                new double[] {expected.x1(i), expected.y1(i), expected.x2(i), expected.y2(i)},
+                new double[] {w.x1(i), w.y1(i), w.x2(i), w.y2(i)}, 0, "segment "+i);
+            assertEquals(expected.shared[i], w.shared[i], "flags of "+i);
+        }
+    }
+
+
+    // Compaction -------------------------------------------------------------
+    @Test
+    void collinearLinesMerge() {
+        PlayerLines p = new PlayerLines();
+        add(p, 0, 0, 10, 0);
+        add(p, 5, 0, 20, 0);    // overlaps
+        assertArrayEquals(new int[] {0, 0, 20, 0}, segments(p));
+        add(p, 30, 0, 20, 0);   // touches, drawn backwards as is the union
+        assertArrayEquals(new int[] {30, 0, 0, 0}, segments(p));
+        add(p, 2, 0, 8, 0);     // inside
+        assertArrayEquals(new int[] {0, 0, 30, 0}, segments(p));
+        add(p, 40, 0, 50, 0);   // in line, but apart
+        add(p, 0, 0, 10, 1);    // apart in direction
+        assertEquals(3, p.count);
+        add(p, 30, 0, 40, 0);   // closes the gap, merging all three
+        assertArrayEquals(new int[] {0, 0, 10, 1, 0, 0, 50, 0}, segments(p));
+        assertEquals(7, p.drawnCount);
+    }
+
+    @Test
+    void joinsWithinTolerance() {
+        PlayerLines p = new PlayerLines();
+        add(p, 0, 0, 100, 0);
+        // the vertex (100,0) is 1/6 px off the union
+        add(p, 100, 0, 600, 1);
+        assertArrayEquals(new int[] {0, 0, 600, 1}, segments(p));
+        assertArrayEquals(new int[] {100, 0}, p.dropped[0]);
+
+        // on from there (600,1) would be 1/2 px off
+        add(p, 600, 1, 1200, 1);
+        assertArrayEquals(new int[] {0, 0, 600, 1, 600, 1, 1200, 1}, segments(p));
+
+        // a line in line with the joined one merges, its vertices go along
+        add(p, 1200, 2, 600, 1);
+        assertArrayEquals(new int[] {600, 1, 1200, 1, 1200, 2, 0, 0}, segments(p));
+        assertArrayEquals(new int[] {100, 0}, p.dropped[1]);
+    }
+
+    @Test
+    void noJoinBeyondTolerance() {
+        PlayerLines p = new PlayerLines();
+        add(p, 0, 0, 100, 0);
+        // the vertex is 1/2 px off the union
+        add(p, 100, 0, 200, 1);
+        assertArrayEquals(new int[] {0, 0, 100, 0, 100, 0, 200, 1}, segments(p));
+
+        // nor where a third segment ends too
+        PlayerLines q = new PlayerLines();
+        add(q, 0, 0, 100, 0);
+        add(q, 100, 0, 100, 50);
+        add(q, 100, 0, 600, 1);
+        assertEquals(3, q.count);
+    }
+
+    @Test
+    void noJoinNearTheBall() {
+        PlayerLines p = new PlayerLines();
+        p.add(0, 0, 100, 0, 50, -10, 20);
+        p.add(100, 0, 600, 1, 50, -10, 20);
+        assertArrayEquals(new int[] {0, 0, 100, 0, 100, 0, 600, 1}, segments(p));
+
+        // a merge moves nothing, so it still happens there
+        p.add(20, 0, 120, 0, 50, -10, 20);
+        assertArrayEquals(new int[] {100, 0, 600, 1, 0, 0, 120, 0}, segments(p));
+    }
+
+
+    // Worlds -----------------------------------------------------------------
+    @Test
+    void sharedEndpointsAreTestedOnce() {
+        PlayerLines p = new PlayerLines();
+        add(p, 0, 0, 10, 10);
+        add(p, 10, 10, 20, 0);   // too sharp to join
+        add(p, 20, 0, 0, 0);     // closes the triangle
+        add(p, 5, 3, 5, 3);      // a point on nothing
+        add(p, 30, 30, 30, 30);  // and one alone
+        SegmentWorld w = new SegmentWorld();
+        p.addTo(w);
+
+        assertEquals(5, w.size());
+        assertEquals(0, w.shared[0]);
+        assertEquals(SegmentWorld.SHARED1, w.shared[1]);
+        assertEquals(SegmentWorld.SHARED1 | SegmentWorld.SHARED2, w.shared[2]);
+        assertEquals(0, w.shared[3]);
+        assertEquals(0, w.shared[4]);
+    }
+
+    @Test
+    void updateMakesWhatAddToMakes() {
+        Random rnd = new Random(21);
+        SegmentWorld level = Worlds.packed(Worlds.lines(rnd, 50));
+        SegmentWorld w = new SegmentWorld();
+        w.set(level);
+
+        PlayerLines p = new PlayerLines();
+        ArrayList<PlayerLines.State> states = new ArrayList<>();
+        int x = 500, y = 500;
+        for (int i = 0; i < 3000; i++) {
+            if (rnd.nextInt(200) == 0 && !states.isEmpty()) {
+                p.restore(states.get(rnd.nextInt(states.size())));
+            } else if (rnd.nextInt(500) == 0) {
+                w.truncate(level.size());
+                p.clear();
+            } else {
+                // strokes of short steps, mostly straight, back over others
+                if (rnd.nextInt(30) == 0) {
+                    x = rnd.nextInt(1000);
+                    y = rnd.nextInt(1000);
+                }
+                int nx = x+rnd.nextInt(3)*(rnd.nextInt(4) == 0 ? -1 : 1)*4;
+                int ny = y+(rnd.nextInt(5) == 0 ? rnd.nextInt(3)-1 : 0);
+                p.add(x, y, nx, ny, 500, 300, 20);
+                x = nx;
+                y = ny;
+            }
+            if (i % 10 == 0) states.add(p.state());
+            p.update(w, level.size());
+
+            SegmentWorld expected = new SegmentWorld();
+            expected.set(level);
+            PlayerLines q = new PlayerLines();
+            q.restore(p.state());
+            q.addTo(expected);
+            assertSameWorld(expected, w);
+        }
+    }
+
+
+    // Checkpoints ------------------------------------------------------------
+    @Test
+    void stateIsCopiedOnWrite() {
+        PlayerLines p = new PlayerLines();
+        add(p, 0, 0, 10, 0);
+        add(p, 0, 10, 10, 20);
+        PlayerLines.State s = p.state();
+        assertSame(s, p.state());
+        int[] lines = s.lines.clone();
+        int[] drawn = s.drawn.clone();
+
+        add(p, 10, 0, 20, 0);   // merges into the first
+        add(p, 50, 50, 60, 50);
+        assertEquals(2, s.count);
+        assertEquals(2, s.drawnCount);
+        assertArrayEquals(lines, s.lines);
+        assertArrayEquals(drawn, s.drawn);
+
+        p.restore(s);
+        assertArrayEquals(new int[] {0, 0, 10, 0, 0, 10, 10, 20}, segments(p));
+        assertEquals(2, p.drawnCount);
+
+        // and a change after restoring copies again
+        add(p, 10, 20, 30, 20);
+        assertArrayEquals(lines, s.lines);
+        assertEquals(3, p.count);
+
+        p.clear();
+        assertEquals(0, p.count);
+        assertArrayEquals(lines, s.lines);
+    }
+
+}
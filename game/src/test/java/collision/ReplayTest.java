@@ -0,0 +1,240 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Replays written by ReplayWriter and read back by ReplayReader: the ticks
+ * they hold, seeking across keyframes, and a new Simulation fed their events
+ * stepping to exactly the same states, rewinds, restored checkpoints and
+ * changes of the goal, rate and radius included.
+ *
+ */
+
+package collision;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReplayTest {
+
+    static final int INTERVAL = 64;
+
+    @TempDir
+    Path dir;
+
+    // the ball states of every step of sim, {x, y, vx, vy} each
+    ArrayList<double[]> states = new ArrayList<>();
+    ArrayList<Integer> times = new ArrayList<>(), scores = new ArrayList<>();
+
+    void step(Simulation sim, int n) {
+        for (int i = 0; i < n; i++) {
+            sim.step();
+            states.add(new double[] {sim.p[0], sim.p[1], sim.v[0], sim.v[1]});
+            times.add(sim.time);
+            scores.add(sim.score);
+        }
+    }
+
+    // plays the replay in a new simulation, checking every step
+    void resimulate(Path file) throws IOException {
+        ReplayReader r = new ReplayReader(file);
+        Simulation sim = new Simulation(r.level());
+        sim.setRate(r.rate());
+        sim.setRadius(r.radius());
+        int[] g = r.goalArea();
+        sim.setGoal(g[0], g[1], g[2], g[3]);
+
+        assertEquals(states.size(), r.ticks());
+        while (r.next()) {
+            for (int i = 0; i < r.events(); i++) {
+                switch (r.eventType(i)) {
+                    case ReplayWriter.EVENT_LINE -> sim.addLine(
+                        r.event(i, 0), r.event(i, 1), r.event(i, 2), r.event(i, 3));
+                    case ReplayWriter.EVENT_RESET -> sim.reset();
+                    case ReplayWriter.EVENT_RESTORE -> r.restore(sim);
+                    case ReplayWriter.EVENT_GOAL -> sim.setGoal(
+                        r.event(i, 0), r.event(i, 1), r.event(i, 2), r.event(i, 3));
+                    case ReplayWriter.EVENT_RATE -> sim.setRate(r.event(i, 0));
+                    case ReplayWriter.EVENT_RADIUS -> sim.setRadius(r.radius(i));
+                    default -> throw new AssertionError("event "+r.eventType(i));
+                }
+            }
+            sim.step();
+            double[] s = states.get((int) r.tick());
+            assertEquals(s[0], sim.p[0], "x at tick "+r.tick());
+            assertEquals(s[1], sim.p[1], "y at tick "+r.tick());
+            assertEquals(s[2], sim.v[0], "vx at tick "+r.tick());
+            assertEquals(s[3], sim.v[1], "vy at tick "+r.tick());
+            assertEquals(r.x(), sim.p[0]);
+            assertEquals(r.vy(), sim.v[1]);
+            assertEquals(r.rate(), sim.rate);
+            assertEquals(r.radius(), sim.radius);
+            assertArrayEquals(r.goalArea(), sim.goalArea);
+            assertEquals(sim.time, times.get((int) r.tick()));
+            assertEquals(sim.score, scores.get((int) r.tick()));
+        }
+    }
+
+    // what the reader holds at each tick, decoded one after the other
+    static ArrayList<Object[]> decode(ReplayReader r) {
+        ArrayList<Object[]> ticks = new ArrayList<>();
+        while (r.next()) ticks.add(decoded(r));
+        return ticks;
+    }
+
+    static Object[] decoded(ReplayReader r) {
+        int[] lines = new int[r.lines()*4];
+        for (int i = 0; i < lines.length; i++) lines[i] = r.line(i/4, i%4);
+        return new Object[] {r.tick(), r.x(), r.y(), r.vx(), r.vy(),
+                             r.rate(), r.radius(), r.goalArea(), lines};
+    }
+
+    @Test
+    void rewindsAndCheckpointsReplayExactly() throws IOException {
+        Path file = dir.resolve("run.replay");
+        Simulation sim = new Simulation(Levels.level1);
+        try (ReplayWriter w = new ReplayWriter(file, INTERVAL, sim)) {
+            sim.record(w);
+
+            // a ramp the ball rolls down, joined and merged strokes on it
+            sim.addLine(0, 100, 100, 120);
+            sim.addLine(100, 120, 200, 140);
+            sim.addLine(150, 130, 300, 160);
+            step(sim, 300);
+            Simulation.Checkpoint c = sim.checkpoint();
+
+            sim.addLine(300, 200, 500, 260);
+            step(sim, 600);
+
+            // back into the time before the last line, then on differently
+            assertEquals(50, sim.rewind(50));
+            sim.addLine(500, 300, 700, 250);
+            step(sim, 200);
+
+            // the checkpoint had fewer lines, a lower score and another time
+            sim.restore(c);
+            sim.addLine(300, 180, 450, 220);
+            step(sim, 300);
+
+            sim.reset();
+            step(sim, 100);
+            sim.record(null);
+        }
+        resimulate(file);
+    }
+
+    @Test
+    void restoreEventHoldsTheWholeCheckpoint() throws IOException {
+        Path file = dir.resolve("sleep.replay");
+        Simulation sim = new Simulation(Levels.level1);
+        try (ReplayWriter w = new ReplayWriter(file, INTERVAL, sim)) {
+            sim.record(w);
+            // the ball comes to rest on a flat line and falls asleep
+            sim.addLine(0, 100, 60, 100);
+            step(sim, 800);
+            assertTrue(sim.asleep());
+            Simulation.Checkpoint c = sim.checkpoint();
+
+            // a wake up and a rewind to before it must sleep again
+            sim.addLine(0, 110, 30, 99);
+            step(sim, 20);
+            sim.restore(c);
+            step(sim, 100);
+            assertTrue(sim.asleep());
+        }
+        resimulate(file);
+
+        ReplayReader r = new ReplayReader(file);
+        r.seek(820);
+        assertTrue(r.next());
+        assertEquals(ReplayWriter.EVENT_RESTORE, r.eventType(0));
+        assertEquals(1, r.event(0, 0));
+        assertEquals(1, r.lines());
+    }
+
+    // a run changing everything the header holds, and going back over it
+    Path changes() throws IOException {
+        Path file = dir.resolve("changes.replay");
+        Simulation sim = new Simulation(Levels.level1);
+        try (ReplayWriter w = new ReplayWriter(file, INTERVAL, sim)) {
+            sim.record(w);
+            sim.addLine(0, 100, 100, 120);
+            sim.addLine(100, 120, 300, 160);
+            step(sim, 150);
+            Simulation.Checkpoint c = sim.checkpoint();
+
+            sim.setRadius(8);
+            sim.addLine(20, 60, 60, 70); // on a ball of 16, not of 8
+            step(sim, 100);
+            sim.setRate(3*Simulation.RATE);
+            step(sim, 300);
+            sim.setGoal(100, 100, 400, 300);
+            step(sim, 100);
+
+            // back to the first rate and radius, the goal stays
+            sim.restore(c);
+            sim.addLine(300, 200, 500, 260);
+            step(sim, 300);
+            assertEquals(30, sim.rewind(30));
+            sim.setRadius(12);
+            sim.setGoal(450, 200, 800, 600);
+            step(sim, 400);
+        }
+        return file;
+    }
+
+    @Test
+    void goalRateAndRadiusReplayExactly() throws IOException {
+        resimulate(changes());
+    }
+
+    @Test
+    void seekDecodesWhatPlayingDoes() throws IOException {
+        ReplayReader r = new ReplayReader(changes());
+        ArrayList<Object[]> ticks = decode(r);
+        assertEquals(r.ticks(), ticks.size());
+        assertFalse(r.next());
+
+        // around every keyframe, and back to the start
+        for (long k = 0; k <= r.ticks(); k += INTERVAL) {
+            for (long t : new long[] {k-1, k, k+1, k+INTERVAL/2}) {
+                if (t < 0 || t >= r.ticks()) continue;
+                r.seek(t);
+                assertTrue(r.next());
+                assertArrayEquals(ticks.get((int) t), decoded(r), "tick "+t);
+            }
+        }
+        r.seek(0);
+        assertEquals(Simulation.RATE, r.rate());
+        assertEquals(Simulation.RADIUS, r.radius());
+        ArrayList<Object[]> again = decode(r);
+        for (int t = 0; t < ticks.size(); t++) {
+            assertArrayEquals(ticks.get(t), again.get(t), "again, tick "+t);
+        }
+    }
+
+    @Test
+    void newLevelEndsTheRecording() throws IOException {
+        Path file = dir.resolve("level.replay");
+        Simulation sim = new Simulation(Levels.level1);
+        try (ReplayWriter w = new ReplayWriter(file, INTERVAL, sim)) {
+            sim.record(w);
+            step(sim, 10);
+            sim.setLevel(Levels.level2);
+            assertNull(sim.recorder);
+            sim.step(10);
+        }
+        assertEquals(10, new ReplayReader(file).ticks());
+    }
+
+}
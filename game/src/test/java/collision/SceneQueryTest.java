@@ -0,0 +1,204 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The queries of SceneQuery, answered through the spatial hash, against the
+ * same tests run on every segment of seeded random worlds, and the hit,
+ * normal and edge cases of small ones.
+ *
+ */
+
+package collision;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SceneQueryTest {
+
+    static final int WORLDS  = 20;
+    static final int QUERIES = 500;
+
+    // random segments of up to 200 px around a 2000 px square, some of the
+    // worlds truncated as Simulation does it
+    static SegmentWorld world(Random rnd, int k) {
+        SegmentWorld w = new SegmentWorld();
+        int n = 1+rnd.nextInt(1000);
+        for (int i = 0; i < n; i++) {
+            double x = rnd.nextDouble()*2000, y = rnd.nextDouble()*2000;
+            w.add(x, y, x+rnd.nextDouble()*400-200, y+rnd.nextDouble()*400-200);
+        }
+        if (k % 3 == 0) w.truncate(n/2);
+        return w;
+    }
+
+
+    // Raycast ----------------------------------------------------------------
+    @Test
+    void raycastHitsTheFirstSegment() {
+        Random rnd = new Random(5);
+        SceneQuery q = new SceneQuery();
+        for (int k = 0; k < WORLDS; k++) {
+            SegmentWorld w = world(rnd, k);
+            for (int i = 0; i < QUERIES; i++) {
+                // from inside and far outside the world, some along an axis
+                double ox = rnd.nextDouble()*6000-2000;
+                double oy = rnd.nextDouble()*6000-2000;
+                double dx = rnd.nextGaussian(), dy = rnd.nextGaussian();
+                if (i % 10 == 0) dx = 0;
+                if (i % 10 == 1) dy = 0;
+                double maxT = (i % 2 == 0) ? Double.POSITIVE_INFINITY
+                                           : rnd.nextDouble()*5000;
+
+                int best = -1;
+                double bestT = maxT;
+                for (int s = 0; s < w.size(); s++) {
+                    double ex = w.x2(s)-w.x1(s), ey = w.y2(s)-w.y1(s);
+                    double d = dx*ey-dy*ex;
+                    if (d == 0) continue;
+                    double px = w.x1(s)-ox, py = w.y1(s)-oy;
+                    double t = (px*ey-py*ex)/d, u = (px*dy-py*dx)/d;
+                    if (t < 0 || t > bestT || u < 0 || u > 1) continue;
+                    if (t == bestT && best != -1) continue;
+                    best = s;
+                    bestT = t;
+                }
+
+                assertEquals(best, q.raycast(w, ox, oy, dx, dy, maxT));
+                if (best != -1) assertEquals(bestT, q.hitT, 0);
+            }
+        }
+    }
+
+
+    // Overlap / Crossing -----------------------------------------------------
+    @Test
+    void overlapFindsEverySegmentInRange() {
+        Random rnd = new Random(6);
+        SceneQuery q = new SceneQuery();
+        for (int k = 0; k < WORLDS; k++) {
+            SegmentWorld w = world(rnd, k);
+            for (int i = 0; i < QUERIES; i++) {
+                double x = rnd.nextDouble()*2400-200, y = rnd.nextDouble()*2400-200;
+                double r = rnd.nextDouble()*150;
+
+                int[] expected = new int[w.size()];
+                int n = 0;
+                for (int s = 0; s < w.size(); s++) {
+                    if (distance2(w, s, x, y) <= r*r) expected[n++] = s;
+                }
+
+                int count = q.overlap(w, x, y, r);
+                int[] found = Arrays.copyOf(q.ids, count);
+                Arrays.sort(found);
+                assertArrayEquals(Arrays.copyOf(expected, n), found);
+            }
+        }
+    }
+
+    @Test
+    void crossingFindsEveryCrossedSegment() {
+        Random rnd = new Random(7);
+        SceneQuery q = new SceneQuery();
+        for (int k = 0; k < WORLDS; k++) {
+            SegmentWorld w = world(rnd, k);
+            for (int i = 0; i < QUERIES; i++) {
+                double x1 = rnd.nextDouble()*2400-200, y1 = rnd.nextDouble()*2400-200;
+                double x2 = x1+rnd.nextDouble()*600-300;
+                double y2 = y1+rnd.nextDouble()*600-300;
+
+                int[] expected = new int[w.size()];
+                int n = 0;
+                for (int s = 0; s < w.size(); s++) {
+                    if (SceneQuery.crosses(x1, y1, x2, y2,
+                            w.x1(s), w.y1(s), w.x2(s), w.y2(s))) expected[n++] = s;
+                }
+
+                int count = q.crossing(w, x1, y1, x2, y2);
+                int[] found = Arrays.copyOf(q.ids, count);
+                Arrays.sort(found);
+                assertArrayEquals(Arrays.copyOf(expected, n), found);
+            }
+        }
+    }
+
+
+    // Small worlds -----------------------------------------------------------
+    @Test
+    void rayHitHasPointAndNormal() {
+        SegmentWorld w = new SegmentWorld();
+        w.add(100, 0, 100, 200);
+        SceneQuery q = new SceneQuery();
+
+        assertEquals(0, q.raycast(w, 0, 50, 2, 0, 100));
+        assertEquals(50, q.hitT, 0);
+        assertEquals(100, q.hitX, 0);
+        assertEquals(50, q.hitY, 0);
+        assertEquals(-1, q.hitNx, 0);
+        assertEquals(0, q.hitNy, 0);
+
+        // from the other side the normal faces the other way
+        assertEquals(0, q.raycast(w, 300, 150, -1, 0, Double.POSITIVE_INFINITY));
+        assertEquals(1, q.hitNx, 0);
+
+        // short of it, past its end, away from it and along it
+        assertEquals(-1, q.raycast(w, 0, 50, 1, 0, 99.9));
+        assertEquals(-1, q.hit);
+        assertEquals(-1, q.raycast(w, 0, 250, 1, 0, 1000));
+        assertEquals(-1, q.raycast(w, 0, 50, -1, 0, 1000));
+        assertEquals(-1, q.raycast(w, 100, -50, 0, 1, 1000));
+    }
+
+    @Test
+    void emptyWorldHasNothing() {
+        SegmentWorld w = new SegmentWorld();
+        SceneQuery q = new SceneQuery();
+        assertEquals(-1, q.raycast(w, 0, 0, 1, 1, Double.POSITIVE_INFINITY));
+        assertEquals(0, q.overlap(w, 0, 0, 1000));
+        assertEquals(0, q.crossing(w, -10, -10, 10, 10));
+
+        // nor one truncated to nothing
+        w.add(0, 0, 10, 10);
+        w.truncate(0);
+        assertEquals(-1, q.raycast(w, -5, 5, 1, 0, Double.POSITIVE_INFINITY));
+        assertEquals(0, q.overlap(w, 5, 5, 1000));
+        assertEquals(0, q.crossing(w, 0, 10, 10, 0));
+    }
+
+    @Test
+    void touchingCounts() {
+        SegmentWorld w = new SegmentWorld();
+        w.add(0, 0, 100, 0);
+        w.add(50, 50, 50, 50);   // a point
+        SceneQuery q = new SceneQuery();
+
+        // a radius reaching exactly to it, and none on it
+        assertEquals(1, q.overlap(w, 50, 10, 10));
+        assertEquals(0, q.ids[0]);
+        assertEquals(1, q.overlap(w, 100, 0, 0));
+        assertEquals(2, q.overlap(w, 50, 25, 25));
+
+        // a segment ending on it, and one through the point
+        assertEquals(1, q.crossing(w, 100, 0, 150, 50));
+        assertEquals(1, q.crossing(w, 0, 100, 90, 10));
+        assertEquals(1, q.ids[0]);
+        assertTrue(SceneQuery.crosses(0, 0, 10, 0, 10, 0, 20, 0));
+    }
+
+    // squared distance from (x,y) to segment s
+    static double distance2(SegmentWorld w, int s, double x, double y) {
+        double ex = w.x2(s)-w.x1(s), ey = w.y2(s)-w.y1(s);
+        double l2 = ex*ex+ey*ey;
+        double t = (l2 == 0) ? 0 : ((x-w.x1(s))*ex+(y-w.y1(s))*ey)/l2;
+        t = Math.max(0, Math.min(1, t));
+        double px = w.x1(s)+t*ex-x, py = w.y1(s)+t*ey-y;
+        return px*px+py*py;
+    }
+
+}
@@ -0,0 +1,172 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The highscore log: what survives a close and reload, torn and corrupt
+ * records, compaction and the import of the old highscores.ser.
+ *
+ */
+
+package collision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ScoreStoreTest {
+
+    @TempDir
+    Path dir;
+
+    Path log() {
+        return dir.resolve("highscores.log");
+    }
+
+    long records() throws IOException {
+        long size = Files.size(log())-ScoreStore.HEADER_SIZE;
+        assertEquals(0, size%ScoreStore.RECORD_SIZE, "whole records");
+        return size/ScoreStore.RECORD_SIZE;
+    }
+
+    static void assertSameTop(List<ScoreStore.Entry> expected,
+                              List<ScoreStore.Entry> top) {
+        assertEquals(expected.size(), top.size());
+        for (int i = 0; i < top.size(); i++) {
+            ScoreStore.Entry a = expected.get(i), b = top.get(i);
+            assertEquals(a.level, b.level);
+            assertEquals(a.score, b.score);
+            assertEquals(a.time, b.time);
+            assertEquals(a.date, b.date);
+        }
+    }
+
+    @Test
+    void submittedScoresAreThereAfterReload() throws IOException {
+        List<ScoreStore.Entry> one, three;
+        try (ScoreStore s = new ScoreStore(log())) {
+            assertTrue(s.submit(1, 500, 12000));
+            assertFalse(s.submit(1, 400, 13000));
+            assertTrue(s.submit(1, 700, 9000));
+            assertTrue(s.submit(3, 50, 60000));
+            one = s.top(1);
+            three = s.top(3);
+            assertEquals(List.of(), s.top(2));
+        }
+        assertEquals(4, records());
+
+        try (ScoreStore s = new ScoreStore(log())) {
+            assertEquals(700, s.best(1));
+            assertEquals(0, s.best(2));
+            assertEquals(50, s.best(3));
+            assertEquals(0, s.best(9));
+            assertSameTop(one, s.top(1));
+            assertSameTop(three, s.top(3));
+            assertNull(s.failure());
+        }
+    }
+
+    @Test
+    void tornTailIsCutOff() throws IOException {
+        try (ScoreStore s = new ScoreStore(log())) {
+            s.submit(1, 500, 12000);
+            s.submit(2, 300, 15000);
+        }
+        // a record cut short by a crash
+        byte[] torn = new byte[ScoreStore.RECORD_SIZE-7];
+        Files.write(log(), torn, StandardOpenOption.APPEND);
+
+        try (ScoreStore s = new ScoreStore(log())) {
+            assertEquals(500, s.best(1));
+            assertEquals(300, s.best(2));
+        }
+        assertEquals(2, records());
+    }
+
+    @Test
+    void loadingStopsAtABadChecksum() throws IOException {
+        try (ScoreStore s = new ScoreStore(log())) {
+            s.submit(1, 500, 12000);
+            s.submit(2, 300, 15000);
+            s.submit(3, 100, 20000);
+        }
+        // flip a bit of the score of the second record
+        byte[] data = Files.readAllBytes(log());
+        data[ScoreStore.HEADER_SIZE+ScoreStore.RECORD_SIZE+7] ^= 1;
+        Files.write(log(), data);
+
+        try (ScoreStore s = new ScoreStore(log())) {
+            assertEquals(500, s.best(1));
+            assertEquals(0, s.best(2));
+            assertEquals(0, s.best(3));
+        }
+        assertEquals(1, records());
+    }
+
+    @Test
+    void reopeningCompactsTheLog() throws IOException {
+        // every one a new best, so all are written
+        try (ScoreStore s = new ScoreStore(log())) {
+            for (int i = 1; i <= ScoreStore.TOP+5; i++) s.submit(1, i*100, 1000);
+        }
+        assertEquals(ScoreStore.TOP+5, records());
+
+        try (ScoreStore s = new ScoreStore(log())) {
+            assertEquals(ScoreStore.TOP, s.top(1).size());
+            assertEquals((ScoreStore.TOP+5)*100, s.best(1));
+            assertEquals(600, s.top(1).get(ScoreStore.TOP-1).score);
+        }
+        assertEquals(ScoreStore.TOP, records());
+        assertFalse(Files.exists(dir.resolve("highscores.log.tmp")));
+    }
+
+    @Test
+    void legacyScoresAreImportedOnce() throws IOException {
+        Path legacy = dir.resolve("highscores.ser");
+        writeLegacy(legacy, new int[] {100, 0, 300});
+
+        try (ScoreStore s = new ScoreStore(log())) {
+            assertEquals(100, s.best(1));
+            assertEquals(0, s.best(2));
+            assertEquals(300, s.best(3));
+            assertEquals(0, s.top(1).get(0).time);
+        }
+        assertEquals(2, records());
+
+        // the log is what counts from then on
+        writeLegacy(legacy, new int[] {900, 900, 900});
+        try (ScoreStore s = new ScoreStore(log())) {
+            assertEquals(100, s.best(1));
+            assertEquals(0, s.best(2));
+        }
+    }
+
+    @Test
+    void unreadableLegacyScoresAreIgnored() throws IOException {
+        Files.write(dir.resolve("highscores.ser"), new byte[] {1, 2, 3});
+        try (ScoreStore s = new ScoreStore(log())) {
+            assertEquals(0, s.best(1));
+        }
+        assertEquals(0, records());
+    }
+
+    static void writeLegacy(Path file, int[] scores) throws IOException {
+        try (OutputStream f = Files.newOutputStream(file);
+             ObjectOutputStream out = new ObjectOutputStream(f)) {
+            out.writeObject(scores);
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The packed world: balls bounce off it as off the int[] list it was built
+ * from, and balls of more radii than it caches bounce as they do in a world
+ * of their radius only, one at a time and in parallel batches.
+ *
+ */
+
+package collision;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SegmentWorldTest {
+
+    // more than are cached
+    static final int RADII = SegmentWorld.RADII+4;
+
+    static double radius(int k) {
+        return 3+k*1.5;
+    }
+
+    // {x, y, vx, vy} of n random moves
+    static double[][] moves(Random rnd, int n) {
+        double[][] m = new double[n][];
+        for (int i = 0; i < n; i++) {
+            double[] b = Worlds.move(rnd);
+            m[i] = new double[] {b[0], b[1], b[2], b[3]};
+        }
+        return m;
+    }
+
+    // the results of the moves in a world of only that radius
+    static double[][] alone(ArrayList<int[]> lines, double[][] m, int[] k) {
+        SegmentWorld[] worlds = new SegmentWorld[RADII];
+        ContactBuffer b = new ContactBuffer();
+        double[][] out = new double[m.length][4];
+        for (int i = 0; i < m.length; i++) {
+            if (worlds[k[i]] == null) worlds[k[i]] = Worlds.packed(lines);
+            CollisionDetection.collisionDetection(m[i][0], m[i][1], radius(k[i]),
+                m[i][2], m[i][3], worlds[k[i]], b, out[i]);
+        }
+        return out;
+    }
+
+    // Packed -----------------------------------------------------------------
+    @Test
+    void packedWorldBouncesLikeTheLines() {
+        Random rnd = new Random(1);
+        ContactBuffer a = new ContactBuffer(), b = new ContactBuffer();
+        double[] ra = new double[4], rb = new double[4];
+        for (int k = 0; k < 20; k++) {
+            ArrayList<int[]> lines = Worlds.lines(rnd, 1000);
+            SegmentWorld w = Worlds.packed(lines);
+            for (int i = 0; i < 500; i++) {
+                double[] m = Worlds.move(rnd);
+                CollisionDetection.collisionDetection(
+                    m[0], m[1], m[4], m[2], m[3], lines, null, a, ra);
+                CollisionDetection.collisionDetection(
+                    m[0], m[1], m[4], m[2], m[3], w, b, rb);
+                // the tangent lines come from atan, sin and cos in one and
+                // from unit vectors in the other, which every bounce
+                // reflects a little further apart
+                assertEquals(a.bounces, b.bounces, "bounces");
+                assertArrayEquals(ra, rb, 1e-3);
+            }
+        }
+    }
+
+
+    // Radii ------------------------------------------------------------------
+    @Test
+    void manyRadiiBounceLikeOneEach() {
+        Random rnd = new Random(12);
+        ArrayList<int[]> lines = Worlds.lines(rnd, 2000);
+        SegmentWorld w = Worlds.packed(lines);
+        ContactBuffer b = new ContactBuffer();
+        double[] result = new double[4];
+
+        // runs of one radius, so some go out of use and are replaced
+        for (int round = 0; round < 5; round++) {
+            double[][] m = moves(rnd, 3000);
+            int[] k = new int[m.length];
+            for (int i = 0; i < k.length; i++) {
+                k[i] = rnd.nextInt(8) == 0 || i == 0 ? rnd.nextInt(RADII) : k[i-1];
+            }
+            double[][] expected = alone(lines, m, k);
+            for (int i = 0; i < m.length; i++) {
+                CollisionDetection.collisionDetection(m[i][0], m[i][1],
+                    radius(k[i]), m[i][2], m[i][3], w, b, result);
+                assertArrayEquals(expected[i], result, 0, "move "+i);
+            }
+        }
+    }
+
+    @Test
+    void manyRadiiInParallelBounceLikeOneEach() {
+        Random rnd = new Random(13);
+        ArrayList<int[]> lines = Worlds.lines(rnd, 2000);
+        SegmentWorld w = Worlds.packed(lines);
+
+        for (int round = 0; round < 5; round++) {
+            int n = 20*BatchCollision.THRESHOLD;
+            double[][] m = moves(rnd, n);
+            int[] k = new int[n];
+            for (int i = 0; i < n; i++) k[i] = rnd.nextInt(RADII);
+            double[][] expected = alone(lines, m, k);
+
+            double[] px = new double[n], py = new double[n], r = new double[n];
+            double[] vx = new double[n], vy = new double[n];
+            for (int i = 0; i < n; i++) {
+                px[i] = m[i][0];
+                py[i] = m[i][1];
+                vx[i] = m[i][2];
+                vy[i] = m[i][3];
+                r[i] = radius(k[i]);
+            }
+            BatchCollision.collisionDetection(px, py, r, vx, vy, n, w);
+            for (int i = 0; i < n; i++) {
+                assertArrayEquals(expected[i],
+                    new double[] {px[i], py[i], vx[i], vy[i]}, 0, "ball "+i);
+            }
+        }
+    }
+
+    @Test
+    void preparedRadiusIsCachedEvenWhenFull() {
+        SegmentWorld w = Worlds.packed(Worlds.lines(new Random(14), 100));
+        for (int k = 0; k < RADII; k++) w.offsets(radius(k));
+        w.prepare(100);
+        assertEquals(100, w.offsets(100).radius);
+    }
+
+}
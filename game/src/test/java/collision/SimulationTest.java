@@ -0,0 +1,205 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The game without graphics: steps, the game time, a resting ball falling
+ * asleep and waking, checkpoints and rewinds.
+ *
+ */
+
+package collision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class SimulationTest {
+
+    static Simulation ramp() {
+        Simulation sim = new Simulation(Levels.level1);
+        sim.addLine(0, 100, 200, 140);
+        return sim;
+    }
+
+    static void assertSameBall(Simulation expected, Simulation sim) {
+        assertEquals(expected.p[0], sim.p[0], "x");
+        assertEquals(expected.p[1], sim.p[1], "y");
+        assertEquals(expected.v[0], sim.v[0], "vx");
+        assertEquals(expected.v[1], sim.v[1], "vy");
+    }
+
+
+    // Steps ------------------------------------------------------------------
+    @Test
+    void stepIsGravityFrictionAndMove() {
+        Simulation sim = new Simulation(Levels.level1);
+        assertEquals(18, sim.p[0]);
+        assertEquals(18, sim.p[1]);
+        sim.step();
+        assertEquals(0, sim.v[0]);
+        assertEquals(Simulation.GRAVITY*Simulation.FRICTION, sim.v[1]);
+        assertEquals(18+sim.v[1], sim.p[1]);
+        assertEquals(Simulation.TICK, sim.time);
+        assertFalse(sim.goal);
+    }
+
+    @Test
+    void sameInputSameGame() {
+        Simulation a = ramp(), b = ramp();
+        a.step(2000);
+        for (int i = 0; i < 2000; i++) b.step();
+        assertSameBall(a, b);
+        assertEquals(2000*Simulation.TICK, a.time);
+        assertEquals(a.time, b.time);
+
+        // and again after a reset
+        a.reset();
+        b.reset();
+        a.addLine(0, 100, 200, 140);
+        b.addLine(0, 100, 200, 140);
+        a.step(700);
+        b.step(700);
+        assertSameBall(a, b);
+    }
+
+    @Test
+    void ballStaysInTheLevel() {
+        Simulation sim = ramp();
+        sim.addLine(200, 300, 500, 250);
+        sim.addLine(600, 200, 780, 400);
+        for (int i = 0; i < 50_000; i++) {
+            sim.step();
+            assertTrue(sim.p[0] > 1 && sim.p[0] < 798, "x at step "+i);
+            assertTrue(sim.p[1] > 1 && sim.p[1] < 598, "y at step "+i);
+        }
+    }
+
+    @Test
+    void goalStopsTheTime() {
+        Simulation sim = new Simulation(Levels.level1);
+        sim.setGoal(0, 0, 100, 100);
+        sim.step();
+        assertTrue(sim.goal);
+        assertEquals(0, sim.time);
+        assertEquals((100000/1)*(2000/1), sim.score);
+        sim.step(100);
+        assertEquals(0, sim.time);
+
+        // a reset starts the attempt over, with the goal kept
+        sim.setGoal(700, 500, 800, 600);
+        sim.reset();
+        sim.addLine(0, 100, 60, 110);
+        sim.step(40);
+        assertFalse(sim.goal);
+        assertEquals(40*Simulation.TICK, sim.time);
+        assertEquals((int) Math.hypot(60, 10), sim.length);
+    }
+
+
+    // Sleeping ---------------------------------------------------------------
+    // a ball come to rest after a flat line below the start, asleep
+    static Simulation resting(int rate) {
+        Simulation sim = new Simulation(Levels.level1);
+        sim.setRate(rate);
+        sim.addLine(0, 100, 60, 100);
+        for (int i = 0; i < 100*rate && !sim.asleep(); i++) sim.step();
+        assertTrue(sim.asleep(), "asleep");
+        return sim;
+    }
+
+    @Test
+    void restingBallFallsAsleepAndStays() {
+        Simulation sim = resting(Simulation.RATE);
+        assertEquals(0, sim.v[0]);
+        assertEquals(0, sim.v[1]);
+
+        double x = sim.p[0], y = sim.p[1];
+        int time = sim.time;
+        sim.step(1000);
+        assertTrue(sim.asleep());
+        assertEquals(x, sim.p[0]);
+        assertEquals(y, sim.p[1]);
+        assertEquals(0, sim.contacts.bounces);
+        assertEquals(time+1000*Simulation.TICK, sim.time);
+
+        // also at a finer rate, after as much game time
+        resting(4*Simulation.RATE);
+    }
+
+    @Test
+    void movingBallDoesNotSleep() {
+        // rolling down the ramp and falling off it
+        Simulation sim = ramp();
+        for (int i = 0; i < 200; i++) {
+            sim.step();
+            assertFalse(sim.asleep(), "asleep at step "+i);
+        }
+    }
+
+    @Test
+    void lineNearTheBallWakesIt() {
+        Simulation sim = resting(Simulation.RATE);
+
+        int x = (int) Math.round(sim.p[0]), y = (int) Math.round(sim.p[1]);
+
+        // far away, and a line on the ball which is not drawn
+        sim.addLine(x-300, y-300, x-200, y-300);
+        assertTrue(sim.asleep());
+        assertFalse(sim.addLine(x-30, y, x+30, y));
+        assertTrue(sim.asleep());
+
+        // just off its side, within WAKE_DISTANCE
+        x += (int) sim.radius+2;
+        assertTrue(sim.addLine(x, y-30, x, y+5));
+        assertFalse(sim.asleep());
+        sim.step();
+        assertFalse(sim.asleep());
+
+        // and it falls asleep again where it was
+        sim.step(1000);
+        assertTrue(sim.asleep());
+    }
+
+    @Test
+    void resetAndRewindWake() {
+        Simulation sim = resting(Simulation.RATE);
+        sim.reset();
+        assertFalse(sim.asleep());
+
+        sim = resting(Simulation.RATE);
+        sim.step(10);
+        // back to a step before it fell asleep
+        sim.rewind(sim.sleepSteps);
+        assertFalse(sim.asleep());
+        sim.step(sim.sleepSteps);
+        assertTrue(sim.asleep());
+    }
+
+
+    // Checkpoints ------------------------------------------------------------
+    @Test
+    void checkpointGoesBackToItsRate() {
+        Simulation a = ramp(), b = ramp();
+        a.step(100);
+        b.step(100);
+        Simulation.Checkpoint c = a.checkpoint();
+
+        a.setRate(4*Simulation.RATE);
+        a.step(300);
+        a.restore(c);
+        assertEquals(Simulation.RATE, a.rate);
+
+        a.step(200);
+        b.step(200);
+        assertEquals(b.p[0], a.p[0]);
+        assertEquals(b.p[1], a.p[1]);
+        assertEquals(b.v[0], a.v[0]);
+        assertEquals(b.v[1], a.v[1]);
+        assertEquals(b.time, a.time);
+        assertEquals(200, a.rewind(200));
+    }
+
+}
@@ -0,0 +1,115 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The spatial hash broadphase: collision detection through it against a
+ * scan of all lines, and queries of any size ending and finding everything.
+ *
+ */
+
+package collision;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SpatialHashTest {
+
+    static final Duration LIMIT = Duration.ofSeconds(5);
+
+    @Test
+    void indexFindsWhatAllLinesFind() {
+        Random rnd = new Random(2);
+        ContactBuffer a = new ContactBuffer(), b = new ContactBuffer();
+        double[] ra = new double[4], rb = new double[4];
+        for (int k = 0; k < 20; k++) {
+            ArrayList<int[]> lines = Worlds.lines(rnd, 1000);
+            SpatialHash index = Worlds.index(lines);
+            for (int i = 0; i < 500; i++) {
+                double[] m = Worlds.move(rnd);
+                CollisionDetection.collisionDetection(
+                    m[0], m[1], m[4], m[2], m[3], lines, null, a, ra);
+                CollisionDetection.collisionDetection(
+                    m[0], m[1], m[4], m[2], m[3], lines, index, b, rb);
+                assertEquals(a.bounces, b.bounces, "bounces");
+                assertArrayEquals(ra, rb, 0);
+            }
+        }
+    }
+
+
+    // Huge and infinite queries ----------------------------------------------
+    static final double[] FAR = {1e9, 1e300, Double.MAX_VALUE,
+                                 Double.POSITIVE_INFINITY};
+
+    @Test
+    void boxOfAnySizeFindsEverySegmentOnce() {
+        SegmentWorld w = Worlds.packed(Worlds.lines(new Random(8), 500));
+        int[] all = new int[w.size()];
+        for (int i = 0; i < all.length; i++) all[i] = i;
+
+        for (double d : FAR) {
+            int n = assertTimeoutPreemptively(LIMIT,
+                () -> w.index.query(-d, -d, d, d));
+            int[] found = Arrays.copyOf(w.index.hits(), n);
+            Arrays.sort(found);
+            assertArrayEquals(all, found, "box "+d);
+
+            // and one that misses the world
+            assertEquals(0, (int) assertTimeoutPreemptively(LIMIT,
+                () -> w.index.query(5000, 5000, d, d)), "box "+d);
+        }
+        assertEquals(0, new SpatialHash().query(-1e300, -1e300, 1e300, 1e300));
+    }
+
+    @Test
+    void overlapOfAnyRadiusFindsEverySegment() {
+        SegmentWorld w = Worlds.packed(Worlds.lines(new Random(9), 500));
+        SceneQuery q = new SceneQuery();
+        for (double r : FAR) {
+            assertEquals(w.size(), (int) assertTimeoutPreemptively(LIMIT,
+                () -> q.overlap(w, 400, 300, r)), "radius "+r);
+        }
+    }
+
+    @Test
+    void raycastOfAnyLengthEnds() {
+        SegmentWorld w = Worlds.packed(Worlds.lines(new Random(10), 500));
+        SceneQuery q = new SceneQuery();
+        for (double d : FAR) {
+            assertTimeoutPreemptively(LIMIT, () -> {
+                // from the middle and from far away, long and short steps
+                q.raycast(w, 1000, 1000, 1, 0.3, d);
+                q.raycast(w, -d, 1000, 1, 0, Double.POSITIVE_INFINITY);
+                q.raycast(w, -d, -d, 1, 1, Double.POSITIVE_INFINITY);
+                q.raycast(w, 1000, 1000, d, -d, 1);
+                q.raycast(w, 1000, 1000, 1/d, 1/d, Double.POSITIVE_INFINITY);
+            }, "ray "+d);
+        }
+        // a ray from far out hits what a short one does, as long as the
+        // distances still tell the segments apart
+        int hit = q.raycast(w, -1e9, 1000.5, 1, 0, Double.POSITIVE_INFINITY);
+        assertEquals(q.raycast(w, -10, 1000.5, 1, 0, 1e4), hit);
+    }
+
+    @Test
+    void hugeMoveEnds() {
+        SegmentWorld w = Worlds.packed(Worlds.lines(new Random(11), 500));
+        ContactBuffer b = new ContactBuffer();
+        double[] result = new double[4];
+        for (double d : FAR) {
+            assertTimeoutPreemptively(LIMIT, () ->
+                CollisionDetection.collisionDetection(
+                    1000, 1000, 8, d, d/3, w, b, result), "move "+d);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * The candidates of VectorSweep against the scalar test of every segment,
+ * on seeded random worlds and moves. Skipped without jdk.incubator.vector.
+ *
+ */
+
+package collision;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class VectorSweepTest {
+
+    static final int WORLDS = 20;
+    static final int MOVES  = 500;
+
+    @Test
+    void vectorSweepGivesTheScalarCandidates() {
+        assumeTrue(CollisionDetection.VECTOR, "no jdk.incubator.vector");
+        Random rnd = new Random(3);
+        ContactBuffer a = new ContactBuffer(), b = new ContactBuffer();
+        for (int k = 0; k < WORLDS; k++) {
+            SegmentWorld w = Worlds.packed(Worlds.lines(rnd, 1000));
+            int[] ids = new int[w.size()];
+            for (int i = 0; i < ids.length; i++) ids[i] = i;
+            for (int i = 0; i < MOVES; i++) {
+                double[] m = Worlds.move(rnd);
+                // a few lanes, and more than fill a vector
+                int n = 1+rnd.nextInt(ids.length);
+                double cx0 = m[0]-m[2], cy0 = m[1]-m[3];
+                if (i % 10 == 0) m[2] = 0;
+                if (i % 10 == 1) m[3] = 0;
+
+                a.clear();
+                a.candidates = 0;
+                for (int j = 0; j < n; j++) {
+                    CollisionDetection.candidate(w.x1[j], w.y1[j], w.x2[j], w.y2[j],
+                                                 j, m[4], cx0, cy0, m[2], m[3], a);
+                }
+                b.clear();
+                b.candidates = 0;
+                VectorSweep.candidates(w, ids, n, m[4], cx0, cy0, m[2], m[3], b);
+
+                assertEquals(a.candidates, b.candidates, "candidates");
+                long[] oa = Arrays.copyOf(a.order, a.candidates);
+                long[] ob = Arrays.copyOf(b.order, b.candidates);
+                Arrays.sort(oa);
+                Arrays.sort(ob);
+                assertArrayEquals(oa, ob);
+            }
+        }
+    }
+
+}
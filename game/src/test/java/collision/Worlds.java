@@ -0,0 +1,54 @@
+/* ----------------------------------------------------------------------------
+ * Copyright : (c) Svein Inge <Thhethssmuz> Albrigtsen 2012
+ * License   : MIT
+ * ----------------------------------------------------------------------------
+ *
+ * Seeded random worlds and moves for the tests.
+ *
+ */
+
+package collision;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+final class Worlds {
+
+    static final double[] RADII = {4, 8, 16};
+
+    private Worlds() {}
+
+    // random lines of up to 200 px in a 2000 px square
+    static ArrayList<int[]> lines(Random rnd, int n) {
+        ArrayList<int[]> l = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int x = rnd.nextInt(2000), y = rnd.nextInt(2000);
+            l.add(new int[] {x, y, x+rnd.nextInt(401)-200, y+rnd.nextInt(401)-200});
+        }
+        return l;
+    }
+
+    static SegmentWorld packed(ArrayList<int[]> lines) {
+        SegmentWorld w = new SegmentWorld();
+        for (int[] l : lines) w.add(l);
+        return w;
+    }
+
+    static SpatialHash index(ArrayList<int[]> lines) {
+        SpatialHash h = new SpatialHash();
+        for (int i = 0; i < lines.size(); i++) {
+            int[] l = lines.get(i);
+            h.insert(i, l[0], l[1], l[2], l[3]);
+        }
+        return h;
+    }
+
+    // {x, y, vx, vy, r}: the ball after its move, as Simulation passes it
+    static double[] move(Random rnd) {
+        double r = RADII[rnd.nextInt(RADII.length)];
+        double v = rnd.nextInt(4) == 0 ? 200 : 30;
+        return new double[] {rnd.nextDouble()*2000, rnd.nextDouble()*2000,
+                             (rnd.nextDouble()*2-1)*v, (rnd.nextDouble()*2-1)*v, r};
+    }
+
+}